@@ -0,0 +1,50 @@
+package orpheusgame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** The game's own note handling (Song and VoiceManager), with the synthesizer taken out: the channels are
+ *  silent, so this is just the bookkeeping. Each frame starts a few notes and lets updateNotes() turn off the
+ *  ones whose time is up, with 'voices' notes sounding on average. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AudioBenchmark {
+
+	/** The length of a frame, in ms. */
+	public static final long delta = 16;
+	/** Notes started per frame. */
+	public static final int notes_per_frame = 2;
+
+	/** How many notes are sounding, on average. More than Song.max_voices means voices get stolen. */
+	@Param({"4", "16", "48"})
+	public int voices;
+
+	private Song song;
+	private long time;
+	private long noteLength;
+	private int pitch;
+
+	@Setup(Level.Iteration)
+	public void setUp(){
+		song = new Song();
+		song.setChannels(BenchmarkSupport.silentChannels(16));
+		time = 1;
+		noteLength = voices * delta / notes_per_frame;
+		pitch = 60;
+	}
+
+	@Benchmark
+	public int updateNotes(){
+		time += delta;
+		for (int i = 0; i < notes_per_frame; i++){
+			pitch = (pitch == 88) ? 60 : pitch + 1;
+			song.noteOn(i, pitch, 100, time + noteLength);
+		}
+		song.updateNotes(time);
+		return song.getActiveNotes();
+	}
+}
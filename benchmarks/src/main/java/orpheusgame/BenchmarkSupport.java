@@ -0,0 +1,59 @@
+package orpheusgame;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import javax.sound.midi.MidiChannel;
+
+/** Bits the benchmarks share: a game with no MIDI devices, and channels that swallow every note so the game's
+ *  own audio code still runs without a synthesizer. */
+public class BenchmarkSupport {
+
+	/** The size of the screen in every benchmark. */
+	public static final int width = 800;
+	public static final int height = 600;
+
+	/** Makes a game without opening any devices, whose notes go to silent channels. */
+	public static Orpheus newGame(){
+		Orpheus game = new Orpheus(width, height, false);
+		game.getSong().setChannels(silentChannels(16));
+		return game;
+	}
+
+	/** Makes a game (as newGame()) and loads a synthetic song with the given number of notes into it. */
+	public static Orpheus newGame(int notes) throws Exception {
+		Orpheus game = newGame();
+		if (!game.loadSong(SyntheticMidi.createTempFile(notes, 1))) {
+			throw new IllegalStateException("Couldn't load a song of " + notes + " notes");
+		}
+		return game;
+	}
+
+	/** Returns a synthetic song with the given number of notes, in a temporary file. */
+	public static File song(int notes) throws Exception {
+		return SyntheticMidi.createTempFile(notes, 1);
+	}
+
+	/** Makes MIDI channels which do nothing. Anything asked of them answers 0 (or false). */
+	public static MidiChannel[] silentChannels(int count){
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				// Object's methods first, so channels still work as keys
+				if (method.getName().equals("hashCode")) {return Integer.valueOf(System.identityHashCode(proxy));}
+				if (method.getName().equals("equals")) {return Boolean.valueOf(proxy == args[0]);}
+				if (method.getName().equals("toString")) {return "SilentChannel";}
+				Class<?> type = method.getReturnType();
+				if (type == boolean.class) {return Boolean.FALSE;}
+				if (type == int.class) {return Integer.valueOf(0);}
+				if (type == long.class) {return Long.valueOf(0);}
+				return null;
+			}
+		};
+		MidiChannel[] channels = new MidiChannel[count];
+		for (int i = 0; i < count; i++){
+			channels[i] = (MidiChannel) Proxy.newProxyInstance(MidiChannel.class.getClassLoader(), new Class<?>[] {MidiChannel.class}, handler);
+		}
+		return channels;
+	}
+}
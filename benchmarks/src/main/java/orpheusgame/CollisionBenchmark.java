@@ -0,0 +1,71 @@
+package orpheusgame;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** The per-frame platform work, by the length of the level. Both should cost about the same however many
+ *  platforms there are, since only the ones that can be on the screen are looked at (see Orpheus.cull()).
+ *  The player is walked right across the screen and back, so it lands on and bumps into real platforms. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CollisionBenchmark {
+
+	/** The length of a frame, in ms. */
+	public static final long delta = 16;
+
+	@Param({"1000", "10000", "100000"})
+	public int platforms;
+
+	private Orpheus game;
+	private File song;
+	private MidiData data;
+	private int frame;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		game = BenchmarkSupport.newGame();
+		song = BenchmarkSupport.song(platforms);
+		data = MidiData.read(song);
+	}
+
+	/** Starts again at the beginning of a fresh level. Measuring goes through songs much faster than playing
+	 *  them does, so the benchmarks call this whenever the level has scrolled past, rather than measure an
+	 *  empty screen; it costs a few ns a frame, spread over a whole song's worth of frames. */
+	@Setup(Level.Iteration)
+	public void newLevel(){
+		game.installLevel(new StagedLevel(song, data, null, game.buildLevel(data)));
+		game.resetPlayer();
+		game.setGameState(Orpheus.GAME_PLAYING);
+		frame = 0;
+	}
+
+	@Benchmark
+	public int updatePlayer(){
+		// A couple of seconds one way, then the other
+		if ((frame++ & 255) < 128) {game.moveRight();}
+		else {game.moveLeft();}
+		game.updatePlayer(delta);
+		return game.getPlayerState();
+	}
+
+	@Benchmark
+	public int updatePlatforms(){
+		if (game.getVisibleStart() >= game.getLevelSize()) {newLevel();}
+		game.updatePlatforms(delta);
+		return game.getVisibleStart();
+	}
+
+	@Benchmark
+	public int cycle(){
+		if (game.getVisibleStart() >= game.getLevelSize()) {newLevel();}
+		if ((frame++ & 255) < 128) {game.moveRight();}
+		else {game.moveLeft();}
+		game.cycle(delta);
+		return game.getScore();
+	}
+}
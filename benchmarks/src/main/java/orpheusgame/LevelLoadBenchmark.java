@@ -0,0 +1,55 @@
+package orpheusgame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import org.openjdk.jmh.annotations.*;
+
+/** How long it takes to get from a midi file to a playable level, by the size of the song. loadSong() is the
+ *  whole thing (reading the file twice, for MidiData and for the sequencer, then building and installing the
+ *  level); the others split out the parts that are the game's own code. getSequence() is what readMidiData()
+ *  replaced, for comparison; run with '-prof gc' to see how much less it allocates. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelLoadBenchmark {
+
+	@Param({"500", "5000", "50000"})
+	public int notes;
+
+	private Orpheus game;
+	private File song;
+	private MidiData data;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		game = BenchmarkSupport.newGame();
+		song = BenchmarkSupport.song(notes);
+		data = MidiData.read(song);
+	}
+
+	@Benchmark
+	public boolean loadSong(){
+		return game.loadSong(song);
+	}
+
+	@Benchmark
+	public MidiData readMidiData() throws Exception {
+		return MidiData.read(song);
+	}
+
+	@Benchmark
+	public Sequence getSequence() throws Exception {
+		return MidiSystem.getSequence(song);
+	}
+
+	@Benchmark
+	public ArrayList<Platform> buildLevel(){
+		return game.buildLevel(data);
+	}
+}
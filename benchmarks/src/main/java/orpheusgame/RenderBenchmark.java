@@ -0,0 +1,78 @@
+package orpheusgame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Draws whole frames of the game into an image, without a window (this runs headless). Headless images
+ *  aren't accelerated, so this measures what the game asks Java2D to do more than what a screen would cost,
+ *  which is the part the game can do something about. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	/** The length of a frame, in ms. */
+	public static final long delta = 16;
+	/** The length of the song played, in notes. */
+	public static final int notes = 5000;
+
+	@Param({"menu", "playing"})
+	public String screen;
+
+	private Orpheus game;
+	private OrpheusGui gui;
+	private File song;
+	private BufferedImage image;
+	private Graphics2D g;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		game = BenchmarkSupport.newGame();
+		gui = new OrpheusGui(game, BenchmarkSupport.width, BenchmarkSupport.height);
+		song = BenchmarkSupport.song(notes);
+		image = new BufferedImage(BenchmarkSupport.width, BenchmarkSupport.height, BufferedImage.TYPE_INT_RGB);
+		g = image.createGraphics();
+		if (screen.equals("playing")) {play();}
+		// Get the caches filled and the background built, as they would be a few frames into the game
+		for (int i = 0; i < 60; i++){frame();}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		g.dispose();
+	}
+
+	/** Starts the song from the beginning. */
+	private void play(){
+		game.loadSong(song);
+		game.resetPlayer();
+		game.setGameState(Orpheus.GAME_PLAYING);
+	}
+
+	/** Only drawing; nothing moves, so this is the cheapest a frame can be. The image has no clip, so the
+	 *  whole frame is copied to it, as after the window is uncovered. */
+	@Benchmark
+	public BufferedImage drawGame(){
+		gui.render();
+		gui.drawGame(g);
+		return image;
+	}
+
+	/** A whole frame: the game moves on and the frame is drawn (both in cycle()), then it's copied out. */
+	@Benchmark
+	public BufferedImage frame(){
+		// Keep playing, whether the song has run out or the player has
+		if (screen.equals("playing") && (game.getGameState() != Orpheus.GAME_PLAYING || game.getVisibleStart() >= game.getLevelSize())) {
+			play();
+		}
+		gui.cycle(delta);
+		gui.drawGame(g);
+		return image;
+	}
+}
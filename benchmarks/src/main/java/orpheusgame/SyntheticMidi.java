@@ -0,0 +1,79 @@
+package orpheusgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.sound.midi.*;
+
+/** Makes midi files of any size for the benchmarks, so they don't depend on what's in resources/music. The
+ *  files look like the ones the game is made for: a tempo track, then one track of notes within the range
+ *  buildLevel() keeps (60 to 88), in short phrases with the odd chord and rest. The same arguments always make
+ *  the same file. */
+public class SyntheticMidi {
+
+	/** Ticks per quarter note. */
+	public static final int resolution = 480;
+	/** Microseconds per quarter note (120 bpm). */
+	public static final int tempo = 500000;
+
+	/** Builds a sequence with the given number of notes. */
+	public static Sequence create(int notes, long seed) throws InvalidMidiDataException {
+		Random rng = new Random(seed);
+		Sequence sequence = new Sequence(Sequence.PPQ, resolution);
+
+		// Track 0: just the tempo, like most files out there
+		Track conductor = sequence.createTrack();
+		byte[] t = {(byte) (tempo >> 16), (byte) (tempo >> 8), (byte) tempo};
+		conductor.add(new MidiEvent(new MetaMessage(0x51, t, 3), 0));
+
+		// Track 1: the notes
+		Track track = sequence.createTrack();
+		long tick = 0;
+		int pitch = 72;
+		int made = 0;
+		while (made < notes) {
+			// Eighths, quarters and the odd half note
+			int length = resolution / 2 * (1 + rng.nextInt(3));
+			if (rng.nextInt(16) == 0) {length = resolution * 2;}
+			// Wander up and down the range
+			pitch = Math.max(60, Math.min(88, pitch + rng.nextInt(9) - 4));
+			// Now and then, a chord
+			int voices = (rng.nextInt(8) == 0) ? 3 : 1;
+			for (int v = 0; v < voices && made < notes; v++, made++){
+				int p = Math.min(88, pitch + v * 4);
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, p, 64 + rng.nextInt(48)), tick));
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, p, 0), tick + length));
+			}
+			tick += length;
+			// And a rest at the end of a phrase
+			if (rng.nextInt(12) == 0) {tick += resolution;}
+		}
+		return sequence;
+	}
+
+	/** Writes a sequence with the given number of notes to a file. */
+	public static void write(int notes, long seed, File file) throws InvalidMidiDataException, IOException {
+		MidiSystem.write(create(notes, seed), 1, file);
+	}
+
+	/** Writes a sequence with the given number of notes to a temporary file, which is deleted on exit. */
+	public static File createTempFile(int notes, long seed) throws InvalidMidiDataException, IOException {
+		File file = File.createTempFile("orpheus-" + notes + "-", ".mid");
+		file.deleteOnExit();
+		write(notes, seed, file);
+		return file;
+	}
+
+	/** Writes a file to look at (or play) by hand: SyntheticMidi <notes> <file> [seed] */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: SyntheticMidi <notes> <file> [seed]");
+			return;
+		}
+		int notes = Integer.parseInt(args[0]);
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+		File file = new File(args[1]);
+		write(notes, seed, file);
+		System.out.println("Wrote " + notes + " notes to " + file + " (" + file.length() + " bytes)");
+	}
+}
@@ -0,0 +1,47 @@
+package orpheusgame;
+
+/** A named sequence of frames from an AnimationSet, each shown for some number of milliseconds. Animations loop,
+ *  unless they reach a frame with a duration of 0, which is then held forever (so a single frame with no duration
+ *  is a still pose, and 'frames..., last:0' plays once). */
+public class Animation {
+
+	private String name;
+	/** The frame numbers, as indices into the AnimationSet's frames. */
+	private int[] frames;
+	/** How long each frame is shown, in ms. */
+	private int[] durations;
+	/** The time (in ms) until the held frame, or the length of one loop if there isn't one. */
+	private int length;
+	/** Whether the animation ends on a held frame rather than looping. */
+	private boolean held;
+
+	public Animation(String name, int[] frames, int[] durations){
+		if (frames.length == 0 || frames.length != durations.length) {
+			throw new IllegalArgumentException("Animation " + name + " needs one duration per frame");
+		}
+		this.name = name;
+		this.frames = frames;
+		this.durations = durations;
+		for (int i = 0; i < durations.length; i++){
+			if (durations[i] < 0) {throw new IllegalArgumentException("Animation " + name + " has a negative duration");}
+			if (durations[i] == 0) {held = true; break;} // Nothing after a held frame is ever shown
+			length += durations[i];
+		}
+	}
+
+	/** Returns the name of this animation. */
+	public String getName(){
+		return name;
+	}
+
+	/** Returns the frame to show 'time' ms after the animation started. */
+	public int getFrameAt(long time){
+		if (held && time >= length) {time = length;}
+		else if (!held) {time %= length;}
+		for (int i = 0; i < frames.length; i++){
+			if (durations[i] == 0 || time < durations[i]) {return frames[i];}
+			time -= durations[i];
+		}
+		return frames[frames.length - 1];
+	}
+}
@@ -0,0 +1,113 @@
+package orpheusgame;
+
+import java.awt.Transparency;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/** A character's sprite sheet, cut up into frames (and mirrored copies of them), plus the animations that can be
+ *  played with those frames. Everything comes from a definition file, so new animations don't need new code.
+ *  A definition is a text resource with one entry per line, tab separated:
+ *  <pre>
+ *  sheet   resources/sprites/Orpheus 24x24.bmp
+ *  key     FF00FF              (optional: this color is made transparent)
+ *  frame   24  24              (the size of one frame)
+ *  anim    walk    1:200   0:25  (name, then frame:ms for each frame; a lone frame number is held forever)
+ *  </pre>
+ *  Blank lines and lines starting with # are ignored. The first animation listed is the default. */
+public class AnimationSet {
+
+	private Sprite[] frames;
+	private Sprite[] mirrored;
+	private HashMap<String, Animation> animations = new HashMap<String, Animation>();
+	private Animation first;
+
+	/** Loads the definition file with the given name (relative to the orpheusgame package). */
+	public AnimationSet(String ref){
+		String sheet = null;
+		int key = 0;
+		boolean keyed = false;
+		int frameWidth = 0, frameHeight = 0;
+		int lastFrame = 0; // The highest frame number any animation uses
+
+		InputStream in = this.getClass().getResourceAsStream(ref);
+		if (in == null) {
+			throw new IllegalArgumentException("Can't find animation definition: " + ref);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {continue;}
+
+				String[] parts = line.split("\\t+");
+				if (parts[0].equals("sheet")) {
+					sheet = parts[1];
+				} else if (parts[0].equals("key")) {
+					key = 0xFF000000 | Integer.parseInt(parts[1], 16);
+					keyed = true;
+				} else if (parts[0].equals("frame")) {
+					frameWidth = Integer.parseInt(parts[1]);
+					frameHeight = Integer.parseInt(parts[2]);
+				} else if (parts[0].equals("anim")) {
+					int[] f = new int[parts.length - 2];
+					int[] d = new int[parts.length - 2];
+					for (int i = 2; i < parts.length; i++){
+						String[] fd = parts[i].split(":");
+						f[i-2] = Integer.parseInt(fd[0]);
+						lastFrame = Math.max(lastFrame, f[i-2]);
+						d[i-2] = (fd.length > 1) ? Integer.parseInt(fd[1]) : 0;
+					}
+					Animation a = new Animation(parts[1], f, d);
+					animations.put(a.getName(), a);
+					if (first == null) {first = a;}
+				} else {
+					System.out.println("Unknown entry in " + ref + ": " + line);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read animation definition: " + ref);
+			e.printStackTrace();
+		} finally {
+			try {reader.close();} catch (IOException e) {}
+		}
+
+		if (sheet == null || frameWidth <= 0 || frameHeight <= 0 || first == null) {
+			throw new IllegalArgumentException("Animation definition " + ref + " needs a sheet, a frame size and an animation");
+		}
+
+		// Cut the sheet up once, both ways round
+		Sprite s;
+		if (keyed) {
+			s = SpriteManager.get().getFilteredSprite(sheet, Transparency.BITMASK, SpriteManager.FILTER_COLOR_KEY, key);
+		} else {
+			s = SpriteManager.get().getSprite(sheet);
+		}
+		frames = SpriteManager.get().getFrames(s, frameWidth, frameHeight, false);
+		mirrored = SpriteManager.get().getFrames(s, frameWidth, frameHeight, true);
+
+		if (lastFrame >= frames.length) {
+			throw new IllegalArgumentException("Animation definition " + ref + " uses frame " + lastFrame + ", but the sheet only has " + frames.length);
+		}
+	}
+
+	/** Returns the animation with the given name, or the default animation if there isn't one. */
+	public Animation getAnimation(String name){
+		Animation a = animations.get(name);
+		return (a != null) ? a : first;
+	}
+
+	/** Returns one frame, facing right (as drawn on the sheet) or, if 'mirrored' is true, facing left. */
+	public Sprite getFrame(int frame, boolean mirrored){
+		return mirrored ? this.mirrored[frame] : frames[frame];
+	}
+
+	/** Returns the number of frames on the sheet. */
+	public int getFrameCount(){
+		return frames.length;
+	}
+}
@@ -0,0 +1,95 @@
+package orpheusgame;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/** One page of a sprite atlas: many small sprites packed into a single image, so that drawing them all uses
+ *  one surface instead of one each. Drawn onto the screen, or onto something else in video memory (like the
+ *  Compositor's frame), the page is drawn from a VolatileImage; its contents can be lost at any time (e.g.
+ *  when the display mode changes), in which case it's restored from the copy in regular memory. Drawn into an
+ *  image in regular memory (headless, say), the regular memory copy is used. See SpriteManager.packAtlas(). */
+public class AtlasPage {
+
+	/** The packed sprites, in regular memory. Always intact. */
+	private BufferedImage backing;
+	/** The packed sprites, in video memory. Created the first time the page is drawn. */
+	private VolatileImage surface;
+
+	public AtlasPage(BufferedImage backing){
+		this.backing = backing;
+	}
+
+	/** Returns the copy of the page in regular memory. */
+	public BufferedImage getBacking(){
+		return backing;
+	}
+
+	/** Returns the width of the page, in pixels. */
+	public int getWidth(){
+		return backing.getWidth();
+	}
+
+	/** Returns the height of the page, in pixels. */
+	public int getHeight(){
+		return backing.getHeight();
+	}
+
+	/** Draws part of the page, as in Graphics.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null). */
+	public void draw(Graphics g, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2){
+		// Drawing into an image in regular memory gains nothing from video memory
+		if (!(g instanceof Graphics2D)) {
+			g.drawImage(backing, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+			return;
+		}
+		GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+		if (gc.getDevice().getType() == GraphicsDevice.TYPE_IMAGE_BUFFER) {
+			g.drawImage(backing, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+			return;
+		}
+
+		// If the contents were lost while we were drawing, restore them and try again
+		for (int tries = 0; tries < 3; tries++){
+			VolatileImage vi = validate(gc);
+			g.drawImage(vi, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+			if (!vi.contentsLost()) {return;}
+		}
+		// Video memory isn't cooperating; draw from regular memory this time
+		g.drawImage(backing, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+	}
+
+	/** Frees the video memory copy. It's recreated the next time the page is drawn. */
+	public void flush(){
+		if (surface != null) {
+			surface.flush();
+			surface = null;
+		}
+	}
+
+	/** Makes sure the video memory copy exists, suits the given configuration, and has its contents. */
+	private VolatileImage validate(GraphicsConfiguration gc){
+		int status = (surface == null) ? VolatileImage.IMAGE_INCOMPATIBLE : surface.validate(gc);
+		if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+			flush();
+			surface = gc.createCompatibleVolatileImage(backing.getWidth(), backing.getHeight(), Transparency.TRANSLUCENT);
+			restore();
+		} else if (status == VolatileImage.IMAGE_RESTORED) {
+			restore();
+		}
+		return surface;
+	}
+
+	/** Copies the page from regular memory to video memory. */
+	private void restore(){
+		Graphics2D g2d = surface.createGraphics();
+		// Replace, don't blend: the new surface may hold garbage
+		g2d.setComposite(AlphaComposite.Src);
+		g2d.drawImage(backing, 0, 0, null);
+		g2d.dispose();
+	}
+}
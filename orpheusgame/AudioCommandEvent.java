@@ -0,0 +1,29 @@
+package orpheusgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event for every note the game itself plays (see Song.noteOn()). The event's duration is
+ *  how long it took to hand the note to the synthesizer. */
+@Name("orpheusgame.AudioCommand")
+@Label("Audio Command")
+@Category({"Orpheus", "Audio"})
+@Description("A note sent to the synthesizer by the game")
+public class AudioCommandEvent extends Event {
+
+	@Label("Channel")
+	public int channel;
+
+	@Label("Note")
+	public int note;
+
+	@Label("Velocity")
+	public int velocity;
+
+	@Label("Active Notes")
+	@Description("Notes the game had sounding once this one started")
+	public int activeNotes;
+}
@@ -0,0 +1,165 @@
+package orpheusgame;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+/** Runs the steps of starting the game (stages) at the same time wherever it can, so starting up takes as long
+ *  as the slowest chain of stages rather than all of them added up. Each stage says which others it has to
+ *  wait for, and is run on a thread of its own once they're done. Every stage is timed, and the loading
+ *  screen can show which are finished with getStageCount() and friends.
+ *  Usage: CompletableFuture<Void> a = boot.stage("a", ...); boot.stage("b", ..., a); boot.await(); */
+public class Bootstrap {
+
+	/** One stage: its name, its future and when it ran (in ms since the Bootstrap was made; -1 if it hasn't). */
+	private static class Stage {
+		String name;
+		CompletableFuture<Void> future;
+		volatile long started = -1;
+		volatile long finished = -1;
+	}
+
+	private ArrayList<Stage> stages = new ArrayList<Stage>();
+	/** When the Bootstrap was made, in ns. */
+	private long origin = System.nanoTime();
+	/** Called every time a stage finishes (from whichever thread ran it). */
+	private volatile Runnable listener;
+
+	private ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Bootstrap");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/** Adds a stage which runs 'work' once every stage in 'after' has finished. If any of them failed, so does
+	 *  this one, without running. Returns the stage's future, for later stages to wait on. */
+	public synchronized CompletableFuture<Void> stage(String name, final Runnable work, CompletableFuture<?>... after){
+		final Stage s = add(name);
+		CompletableFuture<Void> ready = CompletableFuture.allOf(after);
+		// The stage only counts as done once it's been timed, so waiting on it waits for that too
+		s.future = ready.thenRunAsync(new Runnable() {
+			public void run() {
+				s.started = now();
+				work.run();
+			}
+		}, workers).whenComplete(finisher(s));
+		return s.future;
+	}
+
+	/** Adds a stage for work that's already been started some other way (e.g. SpriteManager.preload()). It
+	 *  counts as starting now, and finishing when 'work' does. */
+	public synchronized CompletableFuture<Void> stage(String name, CompletableFuture<?> work){
+		Stage s = add(name);
+		s.started = now();
+		s.future = work.thenRun(new Runnable() {
+			public void run() {}
+		}).whenComplete(finisher(s));
+		return s.future;
+	}
+
+	/** Waits for every stage to finish. Returns false if any of them failed (its exception is printed). */
+	public boolean await(){
+		CompletableFuture<?>[] all;
+		synchronized (this) {
+			all = new CompletableFuture<?>[stages.size()];
+			for (int i = 0; i < all.length; i++){
+				all[i] = stages.get(i).future;
+			}
+		}
+		try {
+			CompletableFuture.allOf(all).join();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			workers.shutdown();
+		}
+		return true;
+	}
+
+	/** Sets something to be done whenever a stage finishes, such as repainting the loading screen. */
+	public void setListener(Runnable listener){
+		this.listener = listener;
+	}
+
+	/** Returns the number of stages. */
+	public synchronized int getStageCount(){
+		return stages.size();
+	}
+
+	/** Returns the number of stages that have finished (or failed). */
+	public synchronized int getFinishedCount(){
+		int done = 0;
+		for (Stage s : stages){
+			if (s.finished >= 0) {done++;}
+		}
+		return done;
+	}
+
+	/** Returns the name of a stage. */
+	public synchronized String getStageName(int i){
+		return stages.get(i).name;
+	}
+
+	/** Returns true if the stage has finished (or failed). */
+	public synchronized boolean isFinished(int i){
+		return stages.get(i).finished >= 0;
+	}
+
+	/** Returns true if the stage is running right now. */
+	public synchronized boolean isRunning(int i){
+		Stage s = stages.get(i);
+		return s.started >= 0 && s.finished < 0;
+	}
+
+	/** Returns how long the stage took, or has taken so far, in ms; -1 if it hasn't started. */
+	public synchronized long getDuration(int i){
+		Stage s = stages.get(i);
+		if (s.started < 0) {return -1;}
+		return (s.finished < 0 ? now() : s.finished) - s.started;
+	}
+
+	/** Returns a table of when each stage started and how long it took, in ms. */
+	@Override
+	public synchronized String toString(){
+		StringBuilder result = new StringBuilder("Startup stages (ms):\n");
+		long end = 0;
+		for (Stage s : stages){
+			result.append(String.format("  %-12s start %5d  took %5d%s%n", s.name, s.started, s.finished - s.started,
+					s.future.isCompletedExceptionally() ? "  FAILED" : ""));
+			end = Math.max(end, s.finished);
+		}
+		result.append(String.format("  %-12s %d%n", "total", end));
+		return result.toString();
+	}
+
+	/** Makes a new stage and adds it to the list. */
+	private Stage add(String name){
+		Stage s = new Stage();
+		s.name = name;
+		stages.add(s);
+		return s;
+	}
+
+	/** Returns what to do when a stage finishes: note the time and tell the listener. */
+	private BiConsumer<Void, Throwable> finisher(final Stage s){
+		return new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				if (s.started < 0) {s.started = now();} // Never ran, because something it waited on failed
+				s.finished = now();
+				Runnable l = listener;
+				if (l != null) {l.run();}
+			}
+		};
+	}
+
+	/** Returns the time since the Bootstrap was made, in ms. */
+	private long now(){
+		return (System.nanoTime() - origin) / 1000000;
+	}
+}
@@ -0,0 +1,31 @@
+package orpheusgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event summing up the collision checks over a number of frames (see
+ *  Orpheus.collision_batch_frames); one event a frame would be more than anyone wants to look at. */
+@Name("orpheusgame.CollisionBatch")
+@Label("Collision Batch")
+@Category({"Orpheus", "Engine"})
+@Description("Collision checks over a number of frames")
+public class CollisionBatchEvent extends Event {
+
+	@Label("Frames")
+	public int frames;
+
+	@Label("Tests")
+	@Description("Platforms the player was checked against")
+	public long tests;
+
+	@Label("Hits")
+	@Description("Platforms the player was touching")
+	public long hits;
+
+	@Label("Most Tests")
+	@Description("The most platforms checked in a single frame")
+	public int maxTests;
+}
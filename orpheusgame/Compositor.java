@@ -0,0 +1,186 @@
+package orpheusgame;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+
+/** Puts each frame together from two layers: a background that rarely changes (the cave, the splash art, menu
+ *  text) and everything that moves. The background is drawn once into an image of its own and kept until it's
+ *  asked for again with a different key. The frame itself is kept between frames too; each frame, only the
+ *  regions that something was drawn over last time are restored from the background, before the moving
+ *  things are drawn again. Only those regions, as they were last frame and this one, are out of date on the
+ *  screen (see getDamage()), so present() only has to copy them. So instead of redrawing the whole screen
+ *  layer by layer, we only touch the parts that change.
+ *  Everything drawn onto the frame must be reported with mark(), or it will never be erased.
+ *  Usage, every frame:
+ *  <pre>
+ *  if (compositor.needsBackground(key)) { Graphics2D bg = compositor.beginBackground(key); ...; bg.dispose(); }
+ *  Graphics2D fg = compositor.beginFrame();
+ *  ... draw, and mark() everything drawn ...
+ *  fg.dispose();
+ *  panel.repaint(compositor.getDamage()); // and, when painting: compositor.present(g);
+ *  </pre>
+ *  Drawing the frame and presenting it may happen on different threads; hold the compositor's lock while
+ *  doing either.
+ *  The frame is a VolatileImage, so that the sprites (and their atlas pages, see AtlasPage) are drawn onto it
+ *  in video memory, and presenting it is a copy within video memory too. If its contents are lost, the next
+ *  frame is rebuilt from the background, which is kept in regular memory. Without a screen (java.awt.headless)
+ *  the frame is an ordinary image instead. */
+public class Compositor {
+
+	/** The layer that doesn't change from frame to frame. */
+	private BufferedImage background;
+	/** The finished frame: the background, plus whatever was drawn over it this frame. A VolatileImage, unless
+	 *  there's no screen. */
+	private Image frame;
+	/** The screen's configuration, which the frame is made for; null without a screen. */
+	private GraphicsConfiguration gc;
+	private int width, height;
+	/** What the background was drawn for (see needsBackground()). */
+	private Object backgroundKey;
+	/** The regions drawn over last frame, and this frame. */
+	private ArrayList<Rectangle> previous = new ArrayList<Rectangle>();
+	private ArrayList<Rectangle> current = new ArrayList<Rectangle>();
+	/** Set when the whole frame has to be rebuilt from the background. */
+	private boolean invalid = true;
+	/** Set when this frame was rebuilt, so all of it is out of date on the screen. */
+	private boolean rebuilt;
+
+	/** Makes a compositor for a screen of the given size. */
+	public Compositor(int width, int height){
+		this.width = width;
+		this.height = height;
+		background = SpriteManager.createCompatibleImage(width, height, Transparency.OPAQUE);
+		if (GraphicsEnvironment.isHeadless()) {
+			frame = SpriteManager.createCompatibleImage(width, height, Transparency.OPAQUE);
+		} else {
+			gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		}
+	}
+
+	/** Returns true if the background has to be drawn again, because it was last drawn for a different key.
+	 *  The key can be anything that describes what's in the background, e.g. the game state. */
+	public boolean needsBackground(Object key){
+		return backgroundKey == null || !backgroundKey.equals(key);
+	}
+
+	/** Returns a graphics context for drawing a new background, cleared to black. The caller disposes of it. */
+	public Graphics2D beginBackground(Object key){
+		backgroundKey = key;
+		invalid = true;
+		Graphics2D g2d = background.createGraphics();
+		g2d.setColor(Color.black);
+		g2d.fillRect(0, 0, width, height);
+		return g2d;
+	}
+
+	/** Forgets the background, so it will be drawn again next frame. */
+	public void invalidate(){
+		backgroundKey = null;
+		invalid = true;
+	}
+
+	/** Erases everything drawn last frame, and returns a graphics context for drawing this one. The caller
+	 *  disposes of it. */
+	public Graphics2D beginFrame(){
+		ArrayList<Rectangle> t = previous;
+		previous = current;
+		current = t;
+		current.clear();
+
+		validate();
+		Graphics2D g2d = (frame instanceof VolatileImage) ? ((VolatileImage) frame).createGraphics() : ((BufferedImage) frame).createGraphics();
+		g2d.setComposite(AlphaComposite.Src);
+		rebuilt = invalid;
+		if (invalid) {
+			restore(g2d, 0, 0, width, height);
+			invalid = false;
+		} else if (!previous.isEmpty()) {
+			// When the regions pile up on top of each other (lots of platforms), one big copy is cheaper
+			Rectangle bounds = new Rectangle(previous.get(0));
+			long area = 0;
+			for (int i = 0; i < previous.size(); i++){
+				Rectangle r = previous.get(i);
+				bounds.add(r);
+				area += (long) r.width * r.height;
+			}
+			if (area >= (long) bounds.width * bounds.height) {
+				restore(g2d, bounds.x, bounds.y, bounds.width, bounds.height);
+			} else {
+				for (int i = 0; i < previous.size(); i++){
+					Rectangle r = previous.get(i);
+					restore(g2d, r.x, r.y, r.width, r.height);
+				}
+			}
+		}
+		g2d.setComposite(AlphaComposite.SrcOver);
+		return g2d;
+	}
+
+	/** Records that something was drawn over the given region of the frame, so it gets erased next frame. */
+	public void mark(int x, int y, int width, int height){
+		Rectangle r = new Rectangle(x, y, width, height).intersection(new Rectangle(0, 0, this.width, this.height));
+		if (!r.isEmpty()) {current.add(r);}
+	}
+
+	/** Returns the part of the screen that's out of date once this frame has been drawn: the bounds of
+	 *  everything drawn last frame (which has been erased) and this frame. That's the whole screen if the frame
+	 *  was rebuilt, and null if nothing was drawn at all. */
+	public Rectangle getDamage(){
+		if (rebuilt) {return new Rectangle(0, 0, width, height);}
+		Rectangle damage = null;
+		for (int i = 0; i < previous.size() + current.size(); i++){
+			Rectangle r = (i < previous.size()) ? previous.get(i) : current.get(i - previous.size());
+			if (damage == null) {damage = new Rectangle(r);}
+			else {damage.add(r);}
+		}
+		return damage;
+	}
+
+	/** Copies the finished frame to the screen (or wherever 'g' draws), but only inside g's clip: the screen is
+	 *  expected to still have the last frame on it everywhere else. With no clip, all of it is copied. */
+	public void present(Graphics g){
+		// Nothing's been drawn yet
+		if (frame == null) {return;}
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, width, height);
+		} else {
+			clip = clip.intersection(new Rectangle(0, 0, width, height));
+			if (clip.isEmpty()) {return;}
+		}
+		g.drawImage(frame, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+				clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
+		// What was just shown may be garbage; the next frame is rebuilt, and shown whole
+		if (frame instanceof VolatileImage && ((VolatileImage) frame).contentsLost()) {invalid = true;}
+	}
+
+	/** Makes sure the frame exists and suits the screen. If it had to be made again, or its contents were lost,
+	 *  it's rebuilt from the background this frame. */
+	private void validate(){
+		if (gc == null) {return;}
+		VolatileImage vi = (VolatileImage) frame;
+		int status = (vi == null) ? VolatileImage.IMAGE_INCOMPATIBLE : vi.validate(gc);
+		if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+			if (vi != null) {vi.flush();}
+			frame = gc.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+			invalid = true;
+		} else if (status == VolatileImage.IMAGE_RESTORED) {
+			invalid = true;
+		}
+	}
+
+	/** Copies a region of the background onto the frame. */
+	private void restore(Graphics2D g2d, int x, int y, int w, int h){
+		g2d.drawImage(background, x, y, x + w, y + h, x, y, x + w, y + h, null);
+	}
+}
@@ -0,0 +1,220 @@
+package orpheusgame;
+
+import java.awt.event.KeyEvent;
+
+/** What the player is asking for, in terms of actions (LEFT, JUMP, CONFIRM...) rather than keys. Once a tick,
+ *  update() takes the key events that arrived since the last one (see InputQueue) and works out which actions
+ *  are held, and which were pressed or released in between. A key tapped faster than a frame still counts
+ *  as a press, and the time of every press is kept.
+ *  Only the game thread should use this. */
+public class Controls {
+
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int UP = 2;
+	public static final int DOWN = 3;
+	public static final int JUMP = 4;
+	/** Picking a menu item, moving on from a screen. */
+	public static final int CONFIRM = 5;
+	/** Going back to the menu. */
+	public static final int BACK = 6;
+	/** Leaving the game, from the main menu. */
+	public static final int QUIT = 7;
+	/** Showing the profiler's overlay, and saving its numbers (see FrameProfiler). */
+	public static final int PROFILER = 8;
+	public static final int PROFILE_DUMP = 9;
+	/** Measuring how far apart the picture and the sound are, and calibrating for it (see LatencyMeter). */
+	public static final int LATENCY = 10;
+	public static final int LATENCY_APPLY = 11;
+	/** Practising: skipping back and forward through the song, and marking and going back to a loop's start. */
+	public static final int SEEK_BACK = 12;
+	public static final int SEEK_FORWARD = 13;
+	public static final int LOOP_MARK = 14;
+	public static final int LOOP_RETURN = 15;
+	/** Halving, doubling and resetting how fast the game runs (slow motion and fast-forward). */
+	public static final int TIME_SLOWER = 16;
+	public static final int TIME_FASTER = 17;
+	public static final int TIME_NORMAL = 18;
+	private static final int action_count = 19;
+
+	/** The actions bound to each key, as a bit mask (bit 1 << ACTION). Keys above 255 can't be bound. */
+	private int[] bindings = new int[256];
+	/** Which keys are down, so the repeats the keyboard sends while one's held aren't counted as presses. */
+	private boolean[] keyDown = new boolean[256];
+
+	/** For each action: how many of its keys are down, and how often it was pressed and released this tick. */
+	private int[] held = new int[action_count];
+	private int[] presses = new int[action_count];
+	private int[] releases = new int[action_count];
+	/** For each action, when it was last pressed and released (System.nanoTime()). */
+	private long[] pressTime = new long[action_count];
+	private long[] releaseTime = new long[action_count];
+
+	/** The most presses and releases kept in order each tick (see getEventCount()). */
+	public static final int max_events = 64;
+	/** This tick's presses and releases, in order: the action, whether it was a press, when, and which actions
+	 *  were held right after it (as a bit mask). */
+	private int[] eventAction = new int[max_events];
+	private boolean[] eventPress = new boolean[max_events];
+	private long[] eventTime = new long[max_events];
+	private int[] eventHeld = new int[max_events];
+	private int eventCount;
+	/** Which actions were held when the tick started, as a bit mask. */
+	private int heldAtStart;
+
+	/** Makes controls with the game's usual keys: the arrows, Z to jump (and confirm), Enter, Escape/Delete to
+	 *  go back, and F3/F4 for the profiler. */
+	public Controls(){
+		bind(KeyEvent.VK_LEFT, LEFT);
+		bind(KeyEvent.VK_RIGHT, RIGHT);
+		bind(KeyEvent.VK_UP, UP);
+		bind(KeyEvent.VK_DOWN, DOWN);
+		bind(KeyEvent.VK_Z, JUMP);
+		bind(KeyEvent.VK_Z, CONFIRM);
+		bind(KeyEvent.VK_ENTER, CONFIRM);
+		bind(KeyEvent.VK_ESCAPE, BACK);
+		bind(KeyEvent.VK_DELETE, BACK);
+		bind(KeyEvent.VK_ESCAPE, QUIT);
+		bind(KeyEvent.VK_F3, PROFILER);
+		bind(KeyEvent.VK_F4, PROFILE_DUMP);
+		bind(KeyEvent.VK_F5, LATENCY);
+		bind(KeyEvent.VK_F6, LATENCY_APPLY);
+		bind(KeyEvent.VK_PAGE_UP, SEEK_BACK);
+		bind(KeyEvent.VK_PAGE_DOWN, SEEK_FORWARD);
+		bind(KeyEvent.VK_INSERT, LOOP_MARK);
+		bind(KeyEvent.VK_HOME, LOOP_RETURN);
+		bind(KeyEvent.VK_MINUS, TIME_SLOWER);
+		bind(KeyEvent.VK_SUBTRACT, TIME_SLOWER);
+		bind(KeyEvent.VK_EQUALS, TIME_FASTER);
+		bind(KeyEvent.VK_ADD, TIME_FASTER);
+		bind(KeyEvent.VK_0, TIME_NORMAL);
+	}
+
+	/** Makes the given key (KeyEvent.VK_XXX) trigger the given action, as well as anything it did already. */
+	public void bind(int keyCode, int action){
+		if (keyCode < 0 || keyCode >= bindings.length) {return;}
+		bindings[keyCode] |= 1 << action;
+	}
+
+	/** Stops the given key from doing anything. */
+	public void unbind(int keyCode){
+		if (keyCode < 0 || keyCode >= bindings.length) {return;}
+		bindings[keyCode] = 0;
+	}
+
+	/** Starts a new tick: forgets this tick's presses and releases, then takes in every key event waiting in
+	 *  the queue. */
+	public void update(InputQueue queue){
+		for (int a = 0; a < action_count; a++){
+			presses[a] = 0;
+			releases[a] = 0;
+		}
+		heldAtStart = heldMask();
+		eventCount = 0;
+		queue.poll(this);
+	}
+
+	/** Applies one key event. Called by InputQueue.poll(). */
+	void keyEvent(int keyCode, boolean down, long nanos){
+		if (keyCode < 0 || keyCode >= bindings.length) {return;}
+		// Ignore repeats of a key that's already down (and releases of one that isn't)
+		if (keyDown[keyCode] == down) {return;}
+		keyDown[keyCode] = down;
+
+		int actions = bindings[keyCode];
+		for (int a = 0; actions != 0; a++, actions >>>= 1){
+			if ((actions & 1) == 0) {continue;}
+			if (down) {
+				// Only the first key down presses the action; a second key for it just holds it down
+				if (held[a]++ == 0) {
+					presses[a]++;
+					pressTime[a] = nanos;
+					addEvent(a, true, nanos);
+				}
+			} else if (held[a] > 0 && --held[a] == 0) {
+				releases[a]++;
+				releaseTime[a] = nanos;
+				addEvent(a, false, nanos);
+			}
+		}
+	}
+
+	/** Adds a press or release to this tick's list, unless it's full. */
+	private void addEvent(int action, boolean press, long nanos){
+		if (eventCount == max_events) {return;}
+		eventAction[eventCount] = action;
+		eventPress[eventCount] = press;
+		eventTime[eventCount] = nanos;
+		eventHeld[eventCount] = heldMask();
+		eventCount++;
+	}
+
+	/** Returns the actions held right now, as a bit mask. */
+	private int heldMask(){
+		int mask = 0;
+		for (int a = 0; a < action_count; a++){
+			if (held[a] > 0) {mask |= 1 << a;}
+		}
+		return mask;
+	}
+
+	/** Returns the number of times an action was pressed or released this tick (up to max_events). Together
+	 *  with getEventAction() and friends, this is the tick's input in the order it happened, for splitting a
+	 *  step of the game at the moment each one came in. */
+	public int getEventCount(){
+		return eventCount;
+	}
+
+	/** Returns the action pressed or released by this tick's i'th event. */
+	public int getEventAction(int i){
+		return eventAction[i];
+	}
+
+	/** Returns true if this tick's i'th event was a press, false if it was a release. */
+	public boolean isEventPress(int i){
+		return eventPress[i];
+	}
+
+	/** Returns when this tick's i'th event happened (System.nanoTime()). */
+	public long getEventTime(int i){
+		return eventTime[i];
+	}
+
+	/** Returns true if the action was held just before this tick's i'th event (or, for i = getEventCount(),
+	 *  after the last one). */
+	public boolean isDownBefore(int action, int i){
+		int mask = (i == 0) ? heldAtStart : eventHeld[i - 1];
+		if (i == eventCount) {mask = heldMask();} // Also right if some events didn't fit in the list
+		return (mask & (1 << action)) != 0;
+	}
+
+	/** Returns true if the action is held down right now. */
+	public boolean isDown(int action){
+		return held[action] > 0;
+	}
+
+	/** Returns true if the action was pressed since the last tick, even if it's been let go again already. */
+	public boolean wasPressed(int action){
+		return presses[action] > 0;
+	}
+
+	/** Returns true if the action was let go since the last tick. */
+	public boolean wasReleased(int action){
+		return releases[action] > 0;
+	}
+
+	/** Returns true if the action was held at any point since the last tick: it's down, or was tapped. */
+	public boolean isActive(int action){
+		return held[action] > 0 || presses[action] > 0;
+	}
+
+	/** Returns when the action was last pressed (System.nanoTime()), or 0 if it never has been. */
+	public long getPressTime(int action){
+		return pressTime[action];
+	}
+
+	/** Returns when the action was last let go (System.nanoTime()), or 0 if it never has been. */
+	public long getReleaseTime(int action){
+		return releaseTime[action];
+	}
+}
@@ -0,0 +1,128 @@
+package orpheusgame;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Shows how the game is doing, live, over JMX: register() it, then connect with jconsole, VisualVM or any
+ *  other JMX tool and look under "orpheusgame". Everything is read from the game when it's asked for, so
+ *  nothing is added to the game loop beyond the few counters the Timer and Orpheus keep anyway. The numbers
+ *  are read from another thread without locking, so they can be a frame out of date. */
+public class EngineStats implements EngineStatsMBean {
+
+	/** The name the stats are registered under. */
+	public static final String object_name = "orpheusgame:type=EngineStats";
+
+	private Orpheus game;
+	private Timer timer;
+
+	/** Shows stats for the given game, run by the given timer (which may be null, if there isn't one). */
+	public EngineStats(Orpheus game, Timer timer){
+		this.game = game;
+		this.timer = timer;
+	}
+
+	/** Registers with the JVM's MBean server, replacing any stats registered before. Returns true upon
+	 *  success, false otherwise. */
+	public boolean register(){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(object_name);
+			if (server.isRegistered(name)) {server.unregisterMBean(name);}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/** Takes the stats off the MBean server again. */
+	public void unregister(){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(object_name);
+			if (server.isRegistered(name)) {server.unregisterMBean(name);}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//=================/ Timer /==============================/
+	public int getTargetFps(){
+		return timer == null ? 0 : timer.getTargetFps();
+	}
+
+	public float getFps(){
+		return timer == null ? 0 : timer.getMeasuredFps();
+	}
+
+	public long getFrameLateness(){
+		return timer == null ? 0 : timer.getLateness();
+	}
+
+	public long getFrames(){
+		return timer == null ? 0 : timer.getFrameCount();
+	}
+
+	public long getLateFrames(){
+		return timer == null ? 0 : timer.getLateFrameCount();
+	}
+
+	//=================/ Game /==============================/
+	public int getGameState(){
+		return game.getGameState();
+	}
+
+	public int getPlatformCount(){
+		return game.getLevelSize();
+	}
+
+	public int getVisiblePlatforms(){
+		return Math.max(0, game.getVisibleEnd() - game.getVisibleStart());
+	}
+
+	public int getCollisionTestsPerFrame(){
+		return game.getCollisionTests();
+	}
+
+	//=================/ Song /==============================/
+	public int getActiveNotes(){
+		return game.getSong().getActiveNotes();
+	}
+
+	public int getPendingNoteOffs(){
+		return game.getSong().getPendingNoteOffs();
+	}
+
+	public long getSequencerPosition(){
+		return game.getSong().getPosition();
+	}
+
+	public long getScrollPosition(){
+		return game.getScrollPosition();
+	}
+
+	public long getSyncDrift(){
+		long position = game.getSong().getPosition();
+		if (position < 0) {return 0;}
+		return position - game.getScrollPosition();
+	}
+
+	//=================/ Sprites /==============================/
+	public int getSpriteCacheSize(){
+		return SpriteManager.get().getCacheSize();
+	}
+
+	public long getSpriteCacheBytes(){
+		return SpriteManager.get().getCacheBytes();
+	}
+
+	@Override
+	public String toString(){
+		return "EngineStats: " + getFps() + "/" + getTargetFps() + " fps, " + getLateFrames() + " of " + getFrames() + " frames late, " +
+				getPlatformCount() + " platforms (" + getVisiblePlatforms() + " visible), " + getActiveNotes() + " notes, drift " +
+				getSyncDrift() + " ms, sprites " + getSpriteCacheSize() + " (" + getSpriteCacheBytes() / 1024 + " KB)";
+	}
+}
@@ -0,0 +1,45 @@
+package orpheusgame;
+
+/** What EngineStats shows over JMX. Times are in ms, memory in bytes. */
+public interface EngineStatsMBean {
+
+	//=================/ Timer /==============================/
+	/** The frame rate the game is trying for. */
+	public int getTargetFps();
+	/** The frame rate actually achieved over the last second or so. */
+	public float getFps();
+	/** How much later than planned the last frame started. */
+	public long getFrameLateness();
+	/** The number of frames run so far. */
+	public long getFrames();
+	/** The number of frames that started over half a frame late. */
+	public long getLateFrames();
+
+	//=================/ Game /==============================/
+	/** The game's state (see Orpheus.GAME_PLAYING and friends). */
+	public int getGameState();
+	/** The number of platforms in the level. */
+	public int getPlatformCount();
+	/** The number of platforms that might be on the screen. */
+	public int getVisiblePlatforms();
+	/** The number of platforms the player was checked against last frame. */
+	public int getCollisionTestsPerFrame();
+
+	//=================/ Song /==============================/
+	/** The number of notes the game itself has sounding. */
+	public int getActiveNotes();
+	/** The number of those notes waiting to be turned off. */
+	public int getPendingNoteOffs();
+	/** How far into the song the sequencer is, or -1 if it isn't playing. */
+	public long getSequencerPosition();
+	/** How far into the song the platforms have scrolled. */
+	public long getScrollPosition();
+	/** How far the sequencer is ahead of the platforms (negative if it's behind), or 0 if it isn't playing. */
+	public long getSyncDrift();
+
+	//=================/ Sprites /==============================/
+	/** The number of sprites loaded. */
+	public int getSpriteCacheSize();
+	/** Roughly how much memory the loaded sprites take up. */
+	public long getSpriteCacheBytes();
+}
@@ -0,0 +1,46 @@
+package orpheusgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** A Flight Recorder event for every cycle of the Timer. The event's own duration is the cycle; the parts of
+ *  it come from the FrameProfiler, if the Timer has one. Drawing happens later, on the event thread, so
+ *  'render' is the last frame drawn, not necessarily this one. */
+@Name("orpheusgame.Frame")
+@Label("Frame")
+@Category({"Orpheus", "Engine"})
+@Description("One cycle of the game loop")
+public class FrameEvent extends Event {
+
+	@Label("Delta")
+	@Description("The time the cycle was told had passed since the last one")
+	@Timespan(Timespan.MILLISECONDS)
+	public long delta;
+
+	@Label("Lateness")
+	@Description("How much later than planned the cycle started")
+	@Timespan(Timespan.MILLISECONDS)
+	public long lateness;
+
+	@Label("Input")
+	@Timespan(Timespan.NANOSECONDS)
+	public long input;
+
+	@Label("Simulation")
+	@Description("Moving the platforms and the player")
+	@Timespan(Timespan.NANOSECONDS)
+	public long simulation;
+
+	@Label("Audio")
+	@Timespan(Timespan.NANOSECONDS)
+	public long audio;
+
+	@Label("Render")
+	@Description("The last frame drawn")
+	@Timespan(Timespan.NANOSECONDS)
+	public long render;
+}
@@ -0,0 +1,154 @@
+package orpheusgame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/** Times each part of a frame separately, so that when the game stutters we can see which part is to blame.
+ *  Each section keeps a LatencyHistogram, which can be read as an overlay on the screen (see drawOverlay) or
+ *  written out as a CSV file (see dumpCsv). Timing is always on; it's a couple of nanoTime() calls and atomic
+ *  adds per section, which is nothing next to a frame.
+ *  Usage: long t = profiler.begin(); ...; profiler.end(FrameProfiler.SECTION_XXX, t); */
+public class FrameProfiler {
+
+	/** Reading the keyboard and acting on it (HandleKeys). */
+	public static final int SECTION_INPUT = 0;
+	/** Moving the platforms and the player. */
+	public static final int SECTION_SIM = 1;
+	/** Letting the song turn notes off (updateNotes). */
+	public static final int SECTION_AUDIO = 2;
+	/** Drawing the frame (OrpheusGui.render()). Copying it to the screen happens later, on the event thread. */
+	public static final int SECTION_PAINT = 3;
+	/** A whole cycle of the timer, from start to finish (including drawing the frame, but not copying it to the
+	 *  screen, which comes later). */
+	public static final int SECTION_FRAME = 4;
+
+	private static final String[] section_names = {"input", "sim", "audio", "paint", "frame"};
+
+	private LatencyHistogram[] sections = new LatencyHistogram[section_names.length];
+	/** The last time recorded for each section. Read from other threads without locking, so it's only a
+	 *  rough guide to what "the last frame" did. */
+	private long[] last = new long[section_names.length];
+	/** Whether the overlay is shown. */
+	private volatile boolean overlay;
+	private Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+	public FrameProfiler(){
+		for (int i = 0; i < sections.length; i++){
+			sections[i] = new LatencyHistogram();
+		}
+	}
+
+	/** Returns the time a section starts, to hand to end() once it's finished. */
+	public long begin(){
+		return System.nanoTime();
+	}
+
+	/** Records that a section which began at 'start' (see begin()) has just finished. */
+	public void end(int section, long start){
+		record(section, System.nanoTime() - start);
+	}
+
+	/** Records a time for a section that was measured some other way, in nanoseconds. */
+	public void record(int section, long nanos){
+		sections[section].record(nanos);
+		last[section] = nanos;
+	}
+	
+	/** Returns the last time recorded for a section, in nanoseconds. */
+	public long getLast(int section){
+		return last[section];
+	}
+
+	/** Returns the histogram for one section (SECTION_XXX). */
+	public LatencyHistogram getSection(int section){
+		return sections[section];
+	}
+
+	/** Returns the name of one section, as used in the overlay and the CSV file. */
+	public static String getSectionName(int section){
+		return section_names[section];
+	}
+
+	/** Returns the number of sections. */
+	public int getSectionCount(){
+		return sections.length;
+	}
+
+	/** Forgets everything recorded so far. */
+	public void reset(){
+		for (int i = 0; i < sections.length; i++){
+			sections[i].reset();
+		}
+	}
+
+	/** Shows or hides the overlay. */
+	public void toggleOverlay(){
+		overlay = !overlay;
+	}
+
+	/** Returns true if the overlay is showing. */
+	public boolean isOverlayShown(){
+		return overlay;
+	}
+
+	/** Returns the size of the overlay drawn by drawOverlay(), in pixels. */
+	public int getOverlayWidth(){
+		return 250;
+	}
+
+	public int getOverlayHeight(){
+		return 16 * (sections.length + 1) + 6;
+	}
+
+	/** Draws a small table of p50/p99/max times (in ms) for every section, if the overlay is showing. */
+	public void drawOverlay(Graphics g, int x, int y){
+		if (!overlay) {return;}
+
+		g.setFont(font);
+		g.setColor(new Color(0, 0, 0, 180));
+		g.fillRect(x, y, getOverlayWidth(), getOverlayHeight());
+		g.setColor(Color.green);
+		g.drawString("section      p50     p99     max", x + 6, y + 16);
+		for (int i = 0; i < sections.length; i++){
+			LatencyHistogram h = sections[i];
+			g.drawString(String.format("%-8s %7.2f %7.2f %7.2f", section_names[i], h.getPercentile(0.5) / 1e6,
+					h.getPercentile(0.99) / 1e6, h.getMax() / 1e6), x + 6, y + 16 * (i + 2));
+		}
+	}
+
+	/** Writes every section out as CSV: first a summary line per section, then every bucket that has anything
+	 *  in it. Times are in nanoseconds. Returns false if the file couldn't be written. */
+	public boolean dumpCsv(File file){
+		PrintWriter out = null;
+		try {
+			if (file.getParentFile() != null) {file.getParentFile().mkdirs();}
+			out = new PrintWriter(new FileWriter(file));
+			out.println("section,count,p50_ns,p99_ns,max_ns");
+			for (int i = 0; i < sections.length; i++){
+				LatencyHistogram h = sections[i];
+				out.println(section_names[i] + "," + h.getCount() + "," + h.getPercentile(0.5) + "," + h.getPercentile(0.99) + "," + h.getMax());
+			}
+			out.println();
+			out.println("section,bucket_low_ns,bucket_high_ns,count");
+			for (int i = 0; i < sections.length; i++){
+				LatencyHistogram h = sections[i];
+				for (int b = 0; b < h.getBucketCount(); b++){
+					long n = h.getBucket(b);
+					if (n == 0) {continue;}
+					out.println(section_names[i] + "," + LatencyHistogram.getBucketLow(b) + "," + LatencyHistogram.getBucketHigh(b) + "," + n);
+				}
+			}
+			return !out.checkError();
+		} catch (IOException e) {
+			System.out.println("Couldn't write the frame profile: " + e.getMessage());
+			return false;
+		} finally {
+			if (out != null) {out.close();}
+		}
+	}
+}
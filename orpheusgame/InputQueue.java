@@ -0,0 +1,74 @@
+package orpheusgame;
+
+/** Carries key presses and releases from the event thread, where they happen, to the game thread, which acts on
+ *  them. Every event keeps the time it arrived, so a key that goes down and up again between two frames
+ *  still shows up as a press, and the game can tell when within the frame it happened.
+ *  Exactly one thread may offer() and exactly one may poll(); that's what lets this get by without locks.
+ *  Events live in a ring of parallel arrays: 'head' counts events ever offered, 'tail' events ever taken. */
+public class InputQueue {
+
+	private final int mask;
+	private final int[] keyCodes;
+	private final boolean[] pressed;
+	private final long[] times;
+
+	/** Written only by the producer. Writing it is what makes a new event visible to the consumer. */
+	private volatile long head;
+	/** Written only by the consumer. Writing it is what hands a slot back to the producer. */
+	private volatile long tail;
+	/** Events thrown away because the queue was full. */
+	private volatile long dropped;
+
+	/** Makes a queue holding up to 'capacity' events, rounded up to a power of two. */
+	public InputQueue(int capacity){
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		mask = size - 1;
+		keyCodes = new int[size];
+		pressed = new boolean[size];
+		times = new long[size];
+	}
+
+	/** Adds a key event (from the producer thread). 'nanos' is when it happened, by System.nanoTime(). Returns
+	 *  false, and drops the event, if the queue is full, i.e. the game hasn't taken anything for a long time. */
+	public boolean offer(int keyCode, boolean down, long nanos){
+		long h = head;
+		if (h - tail > mask) {
+			dropped++;
+			return false;
+		}
+		int i = (int) h & mask;
+		keyCodes[i] = keyCode;
+		pressed[i] = down;
+		times[i] = nanos;
+		head = h + 1;
+		return true;
+	}
+
+	/** Hands every waiting event, oldest first, to 'controls' (from the consumer thread). Returns the number of
+	 *  events taken. */
+	public int poll(Controls controls){
+		long t = tail;
+		long h = head;
+		for (long n = t; n < h; n++){
+			int i = (int) n & mask;
+			controls.keyEvent(keyCodes[i], pressed[i], times[i]);
+		}
+		tail = h;
+		return (int) (h - t);
+	}
+
+	/** Returns the number of events waiting. */
+	public int size(){
+		return (int) (head - tail);
+	}
+
+	/** Returns the most events the queue can hold. */
+	public int getCapacity(){
+		return mask + 1;
+	}
+
+	/** Returns the number of events thrown away because the queue was full. */
+	public long getDropped(){
+		return dropped;
+	}
+}
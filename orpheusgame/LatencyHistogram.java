@@ -0,0 +1,104 @@
+package orpheusgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Counts how long something takes, in nanoseconds, without keeping every measurement. Values are sorted into
+ *  buckets on a log scale: four buckets for every power of two, so each bucket is within about 19% of the
+ *  values in it, whether they're microseconds or seconds. That's plenty for telling a 2 ms frame from a 20 ms
+ *  one, and it's a fixed 2 KB however many values are recorded.
+ *  record() only does atomic adds, so any number of threads can record while another reads. */
+public class LatencyHistogram {
+
+	/** Buckets per power of two. */
+	private static final int sub_buckets = 4;
+	// Values below 4 get a bucket each; after that, the powers of two from 2^2 to 2^62 get four each
+	private static final int bucket_count = 62 * sub_buckets;
+
+	private AtomicLongArray buckets = new AtomicLongArray(bucket_count);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	/** Records one measurement, in nanoseconds. Negative values count as 0. */
+	public void record(long nanos){
+		if (nanos < 0) {nanos = 0;}
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	/** Returns the number of values recorded. */
+	public long getCount(){
+		return count.get();
+	}
+
+	/** Returns the largest value recorded (exactly, not rounded to a bucket). */
+	public long getMax(){
+		return max.get();
+	}
+
+	/** Returns the value that the given fraction (0 to 1) of measurements are at or below, e.g. 0.99 for the
+	 *  99th percentile. The answer is the top of a bucket, so it may be up to 19% high, but never more than the
+	 *  maximum. Returns 0 if nothing has been recorded. */
+	public long getPercentile(double fraction){
+		// Records may come in while we count; go by what the buckets add up to
+		long total = 0;
+		for (int i = 0; i < bucket_count; i++){
+			total += buckets.get(i);
+		}
+		if (total == 0) {return 0;}
+
+		long rank = (long) Math.ceil(fraction * total);
+		if (rank < 1) {rank = 1;}
+		long seen = 0;
+		for (int i = 0; i < bucket_count; i++){
+			seen += buckets.get(i);
+			if (seen >= rank) {return Math.min(getBucketHigh(i), max.get());}
+		}
+		return max.get();
+	}
+
+	/** Returns the number of values in one bucket (see getBucketLow/High). */
+	public long getBucket(int i){
+		return buckets.get(i);
+	}
+
+	/** Returns the number of buckets. */
+	public int getBucketCount(){
+		return bucket_count;
+	}
+
+	/** Forgets everything recorded so far. Values recorded at the same time may or may not be kept. */
+	public void reset(){
+		for (int i = 0; i < bucket_count; i++){
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+
+	/** Returns the bucket a value goes into. */
+	private static int bucketOf(long v){
+		if (v < sub_buckets) {return (int) v;}
+		int exp = 63 - Long.numberOfLeadingZeros(v); // v is in [2^exp, 2^(exp+1))
+		int mantissa = (int) (v >>> (exp - 2)) & (sub_buckets - 1); // which quarter of that range
+		return (exp - 1) * sub_buckets + mantissa;
+	}
+
+	/** Returns the smallest value that goes into the given bucket. */
+	public static long getBucketLow(int i){
+		if (i < sub_buckets) {return i;}
+		int exp = i / sub_buckets + 1;
+		return (long) (sub_buckets + i % sub_buckets) << (exp - 2);
+	}
+
+	/** Returns the largest value that goes into the given bucket. */
+	public static long getBucketHigh(int i){
+		if (i < sub_buckets) {return i;}
+		if (i == bucket_count - 1) {return Long.MAX_VALUE;}
+		return getBucketLow(i + 1) - 1;
+	}
+}
@@ -0,0 +1,283 @@
+package orpheusgame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+/** Measures how far the picture and the sound are apart, so the game can be calibrated to the machine it's on.
+ *  While measuring (see setEnabled()), three moments are timestamped:
+ *  - a platform's left edge crossing the left of the screen in drawGame(), which is when its note is due,
+ *  - the sequencer's NoteOn for that note arriving in Song.send(),
+ *  - a collision sound being started, in Orpheus.
+ *  Each platform is paired with a NoteOn of the same pitch close to it in time, giving the 'music' skew; each
+ *  collision sound is paired with the first frame shown after it, giving the 'collision' skew. Both are kept
+ *  per song, in ms, positive when the picture is behind the sound.
+ *  The calibration offset holds the platforms back (or, if negative, brings them forward) by that many ms; it
+ *  is kept in ~/.orpheus/latency.properties, so it only has to be worked out once on each machine. */
+public class LatencyMeter {
+
+	/** How far apart (in ms) a platform and a NoteOn can be and still be taken as the same note. */
+	public static final long match_window = 500;
+	/** How many unpaired platforms (or NoteOns) are kept for each pitch. */
+	private static final int pending_per_note = 8;
+	private static final int AUDIO = 0;
+	private static final int VISUAL = 1;
+
+	/** The skews measured for one song, in ns. */
+	private static class Skews {
+		long[] music = new long[256];
+		int musicCount;
+		long[] collision = new long[256];
+		int collisionCount;
+	}
+
+	private volatile boolean enabled;
+	/** The calibration offset, in ms. */
+	private volatile long offset;
+	private File file = new File(System.getProperty("user.home"), ".orpheus/latency.properties");
+
+	/** Skews for every song measured so far, by file name, in the order they were played. */
+	private LinkedHashMap<String, Skews> songs = new LinkedHashMap<String, Skews>();
+	private Skews current;
+	private String currentName = "(no song)";
+
+	/** Platforms and NoteOns waiting for their other half: [AUDIO or VISUAL][note * pending_per_note + i]. */
+	private long[][] pending = new long[2][128 * pending_per_note];
+	private int[][] pendingCount = new int[2][128];
+	/** Collision sounds started since the last frame was shown. */
+	private long[] collisions = new long[16];
+	private int collisionCount;
+
+	/** The level drawGame() was last given, and the first of its platforms that hasn't crossed yet. */
+	private ArrayList<Platform> level;
+	private int nextCrossing;
+
+	/** Makes a meter, with the offset saved on this machine (if there is one). */
+	public LatencyMeter(){
+		load();
+	}
+
+	/** Starts or stops measuring. Nothing is recorded while it's off, and everything returns right away. */
+	public synchronized void setEnabled(boolean on){
+		// Don't pair anything up with what happened before
+		if (on && !enabled) {resync();}
+		enabled = on;
+	}
+
+	/** Forgets the platforms and sounds waiting to be paired up, and starts following the level afresh. Called
+	 *  when the song jumps, e.g. after Orpheus.seek(). */
+	public synchronized void resync(){
+		Arrays.fill(pendingCount[AUDIO], 0);
+		Arrays.fill(pendingCount[VISUAL], 0);
+		collisionCount = 0;
+		level = null;
+	}
+
+	public boolean isEnabled(){
+		return enabled;
+	}
+
+	/** Sets the song that measurements are counted towards. Called when a level is installed. */
+	public synchronized void setSong(String name){
+		currentName = name;
+		current = null;
+		resync();
+	}
+
+	/** Returns the calibration offset: how many ms the platforms are held back by. */
+	public long getOffset(){
+		return offset;
+	}
+
+	/** Sets the calibration offset, and saves it for next time. It takes effect from the next level. */
+	public void setOffset(long ms){
+		offset = ms;
+		save();
+	}
+
+	//====================/ Timestamps /===================/
+
+	/** Records a NoteOn from the sequencer, which arrived at 'nanos' (System.nanoTime()). */
+	public void audioNote(int note, long nanos){
+		if (!enabled) {return;}
+		pair(AUDIO, note, nanos);
+	}
+
+	/** Records a collision sound being started at 'nanos'. */
+	public synchronized void collision(long nanos){
+		if (!enabled) {return;}
+		if (collisionCount < collisions.length) {collisions[collisionCount++] = nanos;}
+	}
+
+	/** Called after drawGame() has drawn a frame of the level, at 'nanos': every platform whose left edge has
+	 *  reached the left of the screen since the last frame counts as crossing now, and any collisions since the
+	 *  last frame as shown. 'offsetX' and 'speed' are the platforms' offset and speed (see Orpheus). */
+	public synchronized void frameShown(ArrayList<Platform> platforms, float offsetX, float speed, long nanos){
+		if (!enabled) {return;}
+
+		for (int i = 0; i < collisionCount; i++){
+			add(false, nanos - collisions[i]);
+		}
+		collisionCount = 0;
+
+		// A new level (or measuring just started): only what crosses from now on counts
+		boolean skip = (platforms != level);
+		if (skip) {
+			level = platforms;
+			nextCrossing = 0;
+		}
+		while (nextCrossing < platforms.size()) {
+			Platform p = platforms.get(nextCrossing);
+			float x = p.getX() + offsetX;
+			if (x > 0) {break;}
+			nextCrossing++;
+			if (skip) {continue;}
+			// The platform has gone a little past the edge by now; take off the time that took, so the skew
+			// doesn't jump about by a frame depending on where the frames happen to fall
+			long past = (long) (-x / speed * 1000000000L);
+			pair(VISUAL, p.getNote(), nanos - past);
+		}
+	}
+
+	/** Pairs a platform crossing or NoteOn with the oldest of the other kind for the same pitch, within the
+	 *  match window. If there isn't one, it waits for one instead. */
+	private synchronized void pair(int side, int note, long nanos){
+		if (note < 0 || note > 127) {return;}
+		int other = 1 - side;
+		long[] theirs = pending[other];
+		int base = note * pending_per_note;
+		int n = pendingCount[other][note];
+		for (int i = 0; i < n; i++){
+			long t = theirs[base + i];
+			if (Math.abs(nanos - t) > match_window * 1000000) {continue;}
+			// Found it; everything before it was too old to pair with anything, so it all goes
+			System.arraycopy(theirs, base + i + 1, theirs, base, n - i - 1);
+			pendingCount[other][note] = n - i - 1;
+			add(true, side == VISUAL ? nanos - t : t - nanos);
+			return;
+		}
+		pendingCount[other][note] = 0;
+
+		long[] ours = pending[side];
+		int m = pendingCount[side][note];
+		if (m == pending_per_note) {
+			// Full: the oldest one goes
+			System.arraycopy(ours, base + 1, ours, base, m - 1);
+			m--;
+		}
+		ours[base + m] = nanos;
+		pendingCount[side][note] = m + 1;
+	}
+
+	/** Adds a skew to the current song. */
+	private void add(boolean music, long nanos){
+		if (current == null) {
+			current = songs.get(currentName);
+			if (current == null) {
+				current = new Skews();
+				songs.put(currentName, current);
+			}
+		}
+		if (music) {
+			if (current.musicCount == current.music.length) {current.music = Arrays.copyOf(current.music, current.musicCount * 2);}
+			current.music[current.musicCount++] = nanos;
+		} else {
+			if (current.collisionCount == current.collision.length) {current.collision = Arrays.copyOf(current.collision, current.collisionCount * 2);}
+			current.collision[current.collisionCount++] = nanos;
+		}
+	}
+
+	//====================/ Results /===================/
+
+	/** Returns the offset that would line the platforms up with the music, going by every song measured so
+	 *  far: the current offset less the median music skew. Returns the current offset if nothing's measured. */
+	public synchronized long getSuggestedOffset(){
+		int total = 0;
+		for (Skews s : songs.values()){
+			total += s.musicCount;
+		}
+		if (total == 0) {return offset;}
+		long[] all = new long[total];
+		int n = 0;
+		for (Skews s : songs.values()){
+			System.arraycopy(s.music, 0, all, n, s.musicCount);
+			n += s.musicCount;
+		}
+		Arrays.sort(all);
+		return offset - all[total / 2] / 1000000;
+	}
+
+	/** Forgets every measurement. */
+	public synchronized void reset(){
+		songs.clear();
+		current = null;
+	}
+
+	/** Returns a table of the skews for each song: how many, and their spread, in ms. */
+	@Override
+	public synchronized String toString(){
+		StringBuilder result = new StringBuilder("A/V skew (ms, + is the picture behind the sound), offset " + offset + " ms:\n");
+		result.append(String.format("  %-24s %-9s %6s %7s %7s %7s %7s %7s%n", "song", "kind", "count", "min", "p5", "p50", "p95", "max"));
+		for (String name : songs.keySet()){
+			Skews s = songs.get(name);
+			appendRow(result, name, "music", s.music, s.musicCount);
+			appendRow(result, name, "collision", s.collision, s.collisionCount);
+		}
+		result.append("  suggested offset " + getSuggestedOffset() + " ms\n");
+		return result.toString();
+	}
+
+	/** Adds a line of the table to 'result'. */
+	private static void appendRow(StringBuilder result, String name, String kind, long[] values, int count){
+		if (count == 0) {return;}
+		long[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		if (name.length() > 24) {name = name.substring(0, 24);}
+		result.append(String.format("  %-24s %-9s %6d %7.1f %7.1f %7.1f %7.1f %7.1f%n", name, kind, count, sorted[0] / 1e6,
+				sorted[(count - 1) * 5 / 100] / 1e6, sorted[(count - 1) / 2] / 1e6, sorted[(count - 1) * 95 / 100] / 1e6,
+				sorted[count - 1] / 1e6));
+	}
+
+	//====================/ Saving /===================/
+
+	/** Reads the offset saved on this machine. No file just means no offset. */
+	private void load(){
+		if (!file.isFile()) {return;}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties props = new Properties();
+			props.load(in);
+			offset = Long.parseLong(props.getProperty("offset", "0").trim());
+		} catch (Exception e) {
+			System.out.println("Couldn't read the latency calibration: " + e.getMessage());
+		} finally {
+			if (in != null) {
+				try {in.close();} catch (IOException e) {}
+			}
+		}
+	}
+
+	/** Saves the offset for next time. */
+	private void save(){
+		if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {return;}
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			Properties props = new Properties();
+			props.setProperty("offset", Long.toString(offset));
+			props.store(out, "Orpheus audio/video calibration, in ms");
+		} catch (IOException e) {
+			System.out.println("Couldn't save the latency calibration: " + e.getMessage());
+		} finally {
+			if (out != null) {
+				try {out.close();} catch (IOException e) {}
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package orpheusgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** A Flight Recorder event for every midi file turned into a level (see Orpheus.stageLevel()). */
+@Name("orpheusgame.LevelLoad")
+@Label("Level Load")
+@Category({"Orpheus", "Engine"})
+@Description("A song read and built into platforms")
+public class LevelLoadEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Parse Time")
+	@Description("Reading the midi file, for the level and for the sequencer")
+	@Timespan(Timespan.NANOSECONDS)
+	public long parseTime;
+
+	@Label("Build Time")
+	@Description("Turning the notes into platforms")
+	@Timespan(Timespan.NANOSECONDS)
+	public long buildTime;
+
+	@Label("Notes")
+	public int notes;
+
+	@Label("Platforms")
+	public int platforms;
+}
@@ -0,0 +1,327 @@
+package orpheusgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+/** The channel messages of a Standard MIDI File, decoded straight from a memory-mapped copy of the file into
+ *  flat arrays: one entry per event for the tick, status byte and two data bytes. Unlike
+ *  MidiSystem.getSequence(), this doesn't create a MidiEvent and a MidiMessage for every event, which makes a
+ *  real difference for big files.
+ *  Events are stored track by track, in file order; getTrackStart() and getTrackEnd() give the range of a track.
+ *  Meta and system exclusive events are skipped, except for tempo changes, which are kept so that the song's
+ *  length can be worked out. */
+public class MidiData {
+
+	/** The tempo of a MIDI file which doesn't say otherwise: 120 beats per minute. */
+	public static final int default_tempo = 500000;
+
+	/** The file format (0, 1 or 2), and the timing division from the header. */
+	private int format;
+	private float divisionType;
+	private int resolution;
+
+	/** Every channel message in the file. Only the first eventCount entries are used. */
+	private long[] ticks;
+	private byte[] status;
+	private byte[] data1;
+	private byte[] data2;
+	private int eventCount;
+
+	/** The range of events belonging to each track, and the tick of each track's last event. */
+	private int[] trackStart;
+	private int[] trackEnd;
+	private long[] trackTicks;
+
+	/** Tempo changes (in microseconds per quarter note), sorted by tick. */
+	private long[] tempoTicks = new long[8];
+	private int[] tempoValues = new int[8];
+	private int tempoCount;
+
+	/** The number of NoteOn messages with a velocity above zero. */
+	private int noteCount;
+	/** The length of the whole song, in ticks and in microseconds. */
+	private long tickLength;
+	private long microsecondLength;
+
+	private MidiData() {}
+
+	/** Reads the given Standard MIDI File. */
+	public static MidiData read(File source) throws IOException, InvalidMidiDataException {
+		RandomAccessFile raf = new RandomAccessFile(source, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			MidiData data = new MidiData();
+			data.parse(buf, (int) ch.size());
+			return data;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** Decodes the header and every track chunk in the buffer. */
+	private void parse(MappedByteBuffer buf, int size) throws InvalidMidiDataException {
+		if (size < 14 || buf.getInt(0) != 0x4D546864) { // "MThd"
+			throw new InvalidMidiDataException("Not a Standard MIDI File");
+		}
+		int headerLength = buf.getInt(4);
+		// The header is at least six bytes, and the tracks come after it
+		if (headerLength < 6 || headerLength > size - 8) {
+			throw new InvalidMidiDataException("Bad header length " + headerLength);
+		}
+		format = buf.getShort(8) & 0xFFFF;
+		int numTracks = buf.getShort(10) & 0xFFFF;
+		int division = buf.getShort(12) & 0xFFFF;
+
+		if ((division & 0x8000) == 0) {
+			divisionType = Sequence.PPQ;
+			resolution = division;
+		} else {
+			// SMPTE: the high byte is minus the frame rate, the low byte is ticks per frame
+			int fps = -((byte) (division >> 8));
+			divisionType = (fps == 29) ? Sequence.SMPTE_30DROP : fps;
+			resolution = division & 0xFF;
+		}
+
+		// Every channel message takes at least two bytes (a delta time and a data byte, with running status),
+		// so this is the most events there could be. It's allocated once and never grown.
+		int capacity = Math.max(0, (size - 8 - headerLength) / 2);
+		ticks = new long[capacity];
+		status = new byte[capacity];
+		data1 = new byte[capacity];
+		data2 = new byte[capacity];
+		trackStart = new int[numTracks];
+		trackEnd = new int[numTracks];
+		trackTicks = new long[numTracks];
+
+		int pos = 8 + headerLength;
+		int track = 0;
+		while (track < numTracks && pos + 8 <= size) {
+			int chunkType = buf.getInt(pos);
+			int chunkLength = buf.getInt(pos + 4);
+			pos += 8;
+			if (chunkLength < 0 || pos + chunkLength > size) {
+				throw new InvalidMidiDataException("Track chunk runs past the end of the file");
+			}
+			if (chunkType == 0x4D54726B) { // "MTrk"; anything else is skipped
+				trackStart[track] = eventCount;
+				trackTicks[track] = parseTrack(buf, pos, pos + chunkLength);
+				trackEnd[track] = eventCount;
+				tickLength = Math.max(tickLength, trackTicks[track]);
+				track++;
+			}
+			pos += chunkLength;
+		}
+		if (track < numTracks) {
+			throw new InvalidMidiDataException("Expected " + numTracks + " tracks but found " + track);
+		}
+
+		microsecondLength = tickToMicrosecond(tickLength);
+	}
+
+	/** Decodes the events of one track, from 'pos' up to 'end'. Returns the tick of the last event. An event
+	 *  that runs past 'end' means the file is broken (or cut short), and throws InvalidMidiDataException rather
+	 *  than reading into the next chunk. */
+	private long parseTrack(MappedByteBuffer buf, int pos, int end) throws InvalidMidiDataException {
+		long tick = 0;
+		int running = 0;
+
+		while (pos < end) {
+			// Variable-length delta time
+			int delta = 0;
+			int deltaBytes = 0;
+			int b;
+			do {
+				// At most four bytes, like the lengths below, so 'delta' can't overflow and send 'tick' backwards
+				if (pos >= end || ++deltaBytes > 4) {throw truncated();}
+				b = buf.get(pos++) & 0xFF;
+				delta = (delta << 7) | (b & 0x7F);
+			} while ((b & 0x80) != 0);
+			tick += delta;
+			if (pos >= end) {throw truncated();}
+
+			int st = buf.get(pos) & 0xFF;
+			if (st >= 0x80) {
+				pos++;
+				if (st < 0xF0) {running = st;}
+			} else {
+				// Running status: this is a data byte, and the status is the same as last time
+				if (running == 0) {throw new InvalidMidiDataException("Data byte without a status byte");}
+				st = running;
+			}
+
+			if (st == 0xFF || st == 0xF0 || st == 0xF7) {
+				int type = -1;
+				if (st == 0xFF) {
+					if (pos >= end) {throw truncated();}
+					type = buf.get(pos++) & 0xFF;
+				}
+				int length = 0;
+				int lengthBytes = 0;
+				do {
+					// Lengths are at most four bytes long, which also keeps 'length' from overflowing
+					if (pos >= end || ++lengthBytes > 4) {throw truncated();}
+					b = buf.get(pos++) & 0xFF;
+					length = (length << 7) | (b & 0x7F);
+				} while ((b & 0x80) != 0);
+				if (length > end - pos) {throw truncated();}
+				if (type == 0x51 && length == 3) {
+					addTempo(tick, ((buf.get(pos) & 0xFF) << 16) | ((buf.get(pos + 1) & 0xFF) << 8) | (buf.get(pos + 2) & 0xFF));
+				}
+				pos += length;
+				continue;
+			}
+
+			int command = st & 0xF0;
+			// Program change and channel pressure only have one data byte
+			int dataBytes = (command == 0xC0 || command == 0xD0) ? 1 : 2;
+			if (dataBytes > end - pos) {throw truncated();}
+			int d1 = buf.get(pos++);
+			int d2 = 0;
+			if (dataBytes == 2) {d2 = buf.get(pos++);}
+
+			ticks[eventCount] = tick;
+			status[eventCount] = (byte) st;
+			data1[eventCount] = (byte) d1;
+			data2[eventCount] = (byte) d2;
+			eventCount++;
+			if (command == 0x90 && d2 != 0) {noteCount++;}
+		}
+		return tick;
+	}
+
+	/** The exception for an event which runs past the end of its track. */
+	private static InvalidMidiDataException truncated(){
+		return new InvalidMidiDataException("Event runs past the end of its track");
+	}
+
+	/** Records a tempo change, keeping the list sorted by tick (tracks are read one after the other, so a later
+	 *  track's tempo change can come before an earlier one's). */
+	private void addTempo(long tick, int mpq){
+		if (tempoCount == tempoTicks.length) {
+			tempoTicks = Arrays.copyOf(tempoTicks, tempoCount * 2);
+			tempoValues = Arrays.copyOf(tempoValues, tempoCount * 2);
+		}
+		int i = tempoCount;
+		while (i > 0 && tempoTicks[i - 1] > tick) {
+			tempoTicks[i] = tempoTicks[i - 1];
+			tempoValues[i] = tempoValues[i - 1];
+			i--;
+		}
+		tempoTicks[i] = tick;
+		tempoValues[i] = mpq;
+		tempoCount++;
+	}
+
+	/** Converts a tick to a time in microseconds, following the tempo changes. */
+	public long tickToMicrosecond(long tick){
+		if (divisionType != Sequence.PPQ) {
+			return (long) (tick * 1000000.0 / (divisionType * resolution));
+		}
+		double us = 0;
+		long lastTick = 0;
+		int tempo = default_tempo;
+		for (int i = 0; i < tempoCount && tempoTicks[i] < tick; i++){
+			us += (tempoTicks[i] - lastTick) * (double) tempo / resolution;
+			lastTick = tempoTicks[i];
+			tempo = tempoValues[i];
+		}
+		us += (tick - lastTick) * (double) tempo / resolution;
+		return (long) us;
+	}
+
+	//=========================/ Getters /========================================/
+
+	/** Returns the tick of every event. Only the first getEventCount() entries are meaningful. */
+	public long[] getTicks(){
+		return ticks;
+	}
+
+	/** Returns the status byte of every event (use '& 0xFF' to get the unsigned value). */
+	public byte[] getStatus(){
+		return status;
+	}
+
+	/** Returns the first data byte of every event, e.g. the note number of a NoteOn. */
+	public byte[] getData1(){
+		return data1;
+	}
+
+	/** Returns the second data byte of every event, e.g. the velocity of a NoteOn. Zero for messages with only
+	 *  one data byte. */
+	public byte[] getData2(){
+		return data2;
+	}
+
+	/** Returns the number of channel messages in the file. */
+	public int getEventCount(){
+		return eventCount;
+	}
+
+	/** Returns the number of tracks in the file. */
+	public int getTrackCount(){
+		return trackStart.length;
+	}
+
+	/** Returns the index of the first event of the given track. */
+	public int getTrackStart(int track){
+		return trackStart[track];
+	}
+
+	/** Returns one past the index of the last event of the given track. */
+	public int getTrackEnd(int track){
+		return trackEnd[track];
+	}
+
+	/** Returns the tick of the last event of the given track (like Track.ticks()). */
+	public long getTrackTicks(int track){
+		return trackTicks[track];
+	}
+
+	/** Returns the number of NoteOn messages (with a non-zero velocity) in the file. */
+	public int getNoteCount(){
+		return noteCount;
+	}
+
+	/** Returns the number of tempo changes in the file. */
+	public int getTempoCount(){
+		return tempoCount;
+	}
+
+	/** Returns the i-th tempo change, in microseconds per quarter note. */
+	public int getTempoValue(int i){
+		return tempoValues[i];
+	}
+
+	/** Returns the file format: 0, 1 or 2. */
+	public int getFormat(){
+		return format;
+	}
+
+	/** Returns the timing resolution, as in Sequence.getResolution(). */
+	public int getResolution(){
+		return resolution;
+	}
+
+	/** Returns the length of the song in ticks. */
+	public long getTickLength(){
+		return tickLength;
+	}
+
+	/** Returns the length of the song in microseconds. */
+	public long getMicrosecondLength(){
+		return microsecondLength;
+	}
+
+	/** Returns the average number of milliseconds per tick. */
+	public float getTempo(){
+		return (microsecondLength / 1000) * 1.0f / tickLength;
+	}
+}
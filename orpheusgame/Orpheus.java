@@ -1,9 +1,13 @@
 package orpheusgame;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Random;
 
 import javax.sound.midi.*;
@@ -37,6 +41,8 @@ public class Orpheus extends Program {
 	private int score;
 	/** The player's x and y location (measured from the top left corner of the player's rectangle), and x and y velocities.*/
 	private float x, y, vx, vy;
+	/** The x velocity the player actually moved with in the last updatePlayer() (vx itself is reset after). */
+	private float last_vx;
 	/** The width of the player, in pixels. */
 	private int player_width;
 	/** The height of the player, in pixels. */
@@ -81,15 +87,56 @@ public class Orpheus extends Program {
 	
 	/** The song that holds the data for the currently selected level. */
 	private Song song;
+	/** Pre-rendered sound effects, so they don't have to compete with the song for synthesizer voices. */
+	private SoundEffects effects;
+	/** Measures how far apart the platforms and the music are, and holds the offset that lines them up. */
+	private LatencyMeter latency = new LatencyMeter();
 	
 	/** The level data, transformed into platform objects. */
 	private ArrayList<Platform> level;
 	private int levelSize; // The number of platforms in the level
+	/** The widest platform in the level, in pixels. Platforms are sorted by x, so this bounds how far left of
+	 *  the screen a platform can start and still reach onto it. */
+	private int maxPlatformWidth;
+	/** Platforms before this index have all scrolled off the left of the screen (and been played). */
+	private int firstLive;
+	/** Which platforms the player has cleansed, by index. Platform states are restored from this after a seek. */
+	private BitSet cleansed = new BitSet();
+	/** Platforms in [firstLive, restoredEnd) have the right state. Those after it may be left over from before
+	 *  a seek, and are set from 'cleansed' as they come onto the screen (see cull()). */
+	private int restoredEnd;
+	/** Only platforms in [visStart, visEnd) can be on the screen; the rest don't need drawing or collision
+	 *  checks. Worked out by cull(), whenever the platforms move. */
+	private int visStart, visEnd;
+	/** The number of platforms the player was checked against in the last cycle, over all its steps. */
+	private volatile int collisionTests;
+	/** The checks so far in the cycle that's running: a cycle can call updatePlayer() several times. */
+	private int cycleTests;
+	/** Collision checks are summed up over this many frames into a CollisionBatchEvent. */
+	public static final int collision_batch_frames = 25;
+	/** The Flight Recorder event the current frames' collision checks are added to. */
+	private CollisionBatchEvent collisionBatch = new CollisionBatchEvent();
+	/** The songs to play, and the next one loaded ahead of time. */
+	private Playlist playlist;
+	/** A song asked for with requestSong() which hasn't been installed yet. */
+	private File requested;
+	/** Every song in resources/music, and what's in them. Created by the first call to getLibrary(). */
+	private volatile SongLibrary library;
 	/** The offset of the platforms. sAs they scroll by, px will become more and more negative. 'py' will
 	 *  normally remain 0, but is included here for completion. */
 	private float plat_x, plat_y;
 	/** Speed at which the platforms move -- this depends on the tempo of the music.*/
 	private float platform_speed;
+	/** How fast the game runs, as a multiple of real time: below 1 is slow motion, above it fast-forward. */
+	private float time_scale = 1;
+	/** The fraction of a ms left over from scaling the last cycle, which goes into the next one. */
+	private double scale_carry;
+	public static final float min_time_scale = 0.25f, max_time_scale = 32;
+	/** Above this time scale the game is muted; it would only be noise. */
+	public static final float mute_time_scale = 4;
+	/** The longest the game moves on in one go, in ms. Longer cycles (as when fast-forwarding) are broken up
+	 *  into steps this long, so the player can't go through a platform between one check and the next. */
+	public static final long max_step = 20;
 	/** What fraction of the note's duration is occupied by a physical note. */
 	public float platform_fill_factor;
 	/** The height (in pixels) of all platforms. */
@@ -105,6 +152,13 @@ public class Orpheus extends Program {
 	
 	/** Create a new game of Orpheus with the given width and height. */
 	public Orpheus(int width, int height){
+		this(width, height, true);
+	}
+	
+	/** Create a new game of Orpheus with the given width and height. If 'openDevices' is false, the MIDI devices
+	 *  aren't opened: everything works, but songs can't be played and the game makes no sound until
+	 *  Song.setChannels() is called. This is for running the game's logic on its own, e.g. in the benchmarks. */
+	public Orpheus(int width, int height, boolean openDevices){
 		// Initialize random number generator
 		RNG = new Random();
 		
@@ -132,14 +186,26 @@ public class Orpheus extends Program {
 		//
 		
 		level = new ArrayList<Platform>();
+		collisionBatch.begin();
 		
 		game_state = GAME_MAIN_MENU;
 		// Create a new midi-handling song object
 		song = new Song();
+		if (openDevices) {openDevices();}
+		song.setLatencyMeter(latency);
+		effects = new SoundEffects(song);
+		playlist = new Playlist(this);
+	}
+	
+	/** Opens the MIDI devices, for a game created without them. If they can't be opened, the game quits. This
+	 *  can take a while, and is safe to do on another thread while the rest of the game is set up. */
+	public boolean openDevices(){
 		if (!song.loadDevices()){
 			printLine("Failed to set up MIDI devices!");
 			quit();
+			return false;
 		}
+		return true;
 	}
 	
 	/** The main game loop. */
@@ -266,9 +332,20 @@ public class Orpheus extends Program {
 	}
 	
 	
-	/** Lists the songs available for play in resources/music. At present, this WILL list files which
-	 *  are not of type .mid, so be careful! */
+	/** Lists the midi files available for play in resources/music. This reads the directory every time it's
+	 *  called; the game menus use getLibrary() instead. */
 	public File[] enumerateSongs(){
+		// List all the midi files in the directory
+		File songs[] = getMusicDirectory().listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().toLowerCase().endsWith(".mid");
+			}
+		});
+		return songs;
+	}
+	
+	/** Returns the resources/music directory, where the songs live. */
+	public File getMusicDirectory(){
 		/* Hall of Shame: All the file loaders that didn't work...
 		File dir = new File(System.getProperty("user.dir"));
 		String path = this.getClass().getResource("").getPath();
@@ -291,57 +368,122 @@ public class Orpheus extends Program {
 			printLine("Error! Directory '/resources/music/' doesn't exist!"); 
 			System.exit(1);
 		}
-		
-		// List all the files in the directory
-		File songs[] = dir.listFiles();
-		return songs;
+		return dir;
+	}
+	
+	/** Returns the index of available songs, which is filled in (and kept up to date) in the background. The
+	 *  first call can come from the drawing and the game threads at once, hence the lock: only one library (and
+	 *  one set of threads watching the directory) may be made. */
+	public synchronized SongLibrary getLibrary(){
+		if (library == null) {
+			library = new SongLibrary(getMusicDirectory(), this);
+			library.start();
+		}
+		return library;
 	}
 	
 	/** Loads the specified midi file into memory and sets up the game world. Returns true
-	 *  if the operation succeeded; false otherwise. */
+	 *  if the operation succeeded; false otherwise. This does all the loading on the calling thread; see
+	 *  requestSong() for the version which doesn't. */
 	public boolean loadSong(File source){
+		StagedLevel staged = stageLevel(source);
+		if (staged == null) {return false;}
+		installLevel(staged);
+		return true;
+	}
+	
+	/** Reads a midi file and builds its platforms, without touching the current level. This is safe to call
+	 *  from a background thread. Returns null if the file couldn't be loaded. */
+	public StagedLevel stageLevel(File source){
+		LevelLoadEvent event = new LevelLoadEvent();
+		event.begin();
+		MidiData data;
+		Sequence sequence;
+		long start = System.nanoTime();
+		try {
+			data = MidiData.read(source);
+			// The sequencer needs one of these too, so we may as well make it here rather than in play()
+			sequence = MidiSystem.getSequence(source);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		long parsed = System.nanoTime();
+		ArrayList<Platform> platforms = buildLevel(data);
 		
-		// If the data is loaded, returns true. If a problem occurred, returns false.
-		if (!song.loadData(source)){return false;}
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = source.getPath();
+			event.parseTime = parsed - start;
+			event.buildTime = System.nanoTime() - parsed;
+			event.notes = data.getNoteCount();
+			event.platforms = platforms.size();
+			event.commit();
+		}
+		return new StagedLevel(source, data, sequence, platforms);
+	}
+	
+	/** Switches the game over to a staged level. This only swaps references, so it's cheap enough to do in the
+	 *  middle of the game loop. */
+	public void installLevel(StagedLevel staged){
+		song.setData(staged.getSource(), staged.getData(), staged.getSequence());
 		
-		// Turn the song into platforms (first destroying the previous incarnation, if it exists):
-		level.clear();
-		plat_x = 0;
+		// Out with the old level, in with the new
+		level = staged.getPlatforms();
+		// The calibration offset holds the platforms back by that much, to make up for the sound being late
+		plat_x = latency.getOffset() * platform_speed / 1000;
+		latency.setSong(staged.getSource().getName());
 		plat_y = 0;
+		maxPlatformWidth = 0;
+		for (int i = 0; i < level.size(); i++){
+			maxPlatformWidth = Math.max(maxPlatformWidth, level.get(i).getWidth());
+		}
+		firstLive = 0;
+		cleansed = new BitSet(level.size());
+		restoredEnd = 0;
+		cull();
+		// Collision checks are counted afresh for each level
+		collisionBatch = new CollisionBatchEvent();
+		collisionBatch.begin();
+		// TODO Song tempo needs to be analyzed in order to determine speed of notes
+		//platform_speed = 10.0f;
+		levelSize = level.size();
+	}
+	
+	/** Turns a song into platforms. */
+	public ArrayList<Platform> buildLevel(MidiData data){
+		ArrayList<Platform> platforms = new ArrayList<Platform>();
 		
 		// The naive way to create a level is to just look through the MIDI sequence and make a platform
 		// for every NoteOn message, and to make the platforms all the same width;
-		MidiEvent mEvent;
-		MidiMessage mMSG;
+		long[] ticks = data.getTicks();
+		byte[] status = data.getStatus();
+		byte[] data1 = data.getData1();
+		byte[] data2 = data.getData2();
 		int iStatus; // The status byte of the message
 		int iNote; // The data byte of the message
-		int iVelocity = 0; // The 'pressure' of the note. If this is zero then this is technically a NoteOff message
+		int iVelocity; // The 'pressure' of the note. If this is zero then this is technically a NoteOff message
 		long lTick; // The timestamp of the message, i.e. when the message is sent.
-		Track[] tracks = song.getTracks();
+		float tempo = data.getTempo(); // Milliseconds per tick
 		int activeTrack = 0; // The track with the data
 		int platWidth = 20; // The width of the platform
 		
-		if (tracks.length == 1) {
+		if (data.getTrackCount() == 1) {
 			activeTrack = 0;
 		}
-		else if (tracks[0].ticks() < tracks[1].ticks()) {
+		else if (data.getTrackTicks(0) < data.getTrackTicks(1)) {
 			activeTrack = 1;
 		}
+		int start = data.getTrackStart(activeTrack);
+		int end = data.getTrackEnd(activeTrack);
 		
-		// Data is usually stored on the second track, not the first. Note that size() is the number of
-		// MIDI events in the track. (We could loop through all tracks -- this would probably be a good idea)
-		for (int i = 0; i < tracks[activeTrack].size(); i++){
-			mEvent = tracks[activeTrack].get(i);
-			mMSG = mEvent.getMessage();
-			iStatus = (int) (mMSG.getMessage()[0] & 0xFF);
-			iNote = (int) (mMSG.getMessage()[1] & 0xFF);
-			
-			// We can only access velocity in certain messages - this code avoids ArrayIndexOutOfBounds
-			if (mMSG.getMessage().length > 2) {
-				iVelocity = (int) (mMSG.getMessage()[2] & 0xFF);
-			}
-			
-			lTick = mEvent.getTick();
+		// Data is usually stored on the second track, not the first. Events are stored track by track,
+		// so a track is just a range of indices. (We could loop through all tracks -- this would probably be a good idea)
+		for (int i = start; i < end; i++){
+			iStatus = status[i] & 0xFF;
+			iNote = data1[i] & 0xFF;
+			iVelocity = data2[i] & 0xFF;
+			lTick = ticks[i];
 			// 144 = NoteOn message (MIDI Specification)
 			if (iStatus == 144 && iVelocity != 0) {
 				// TODO The size and position of the platform will depend on many factors
@@ -350,42 +492,92 @@ public class Orpheus extends Program {
 				if (iNote > 88 || iNote < 60) {continue;}
 				
 				// Okay, let's make the notes the RIGHT width! Check until we get to the next message
-				for (int j = (i+1); j < tracks[activeTrack].size(); j++) {
-					MidiMessage jMSG = tracks[activeTrack].get(j).getMessage();
-					int jStatus = (int) (jMSG.getMessage()[0] & 0xFF);
-					int jNote = (int) (jMSG.getMessage()[1] & 0xFF);
+				for (int j = (i+1); j < end; j++) {
+					int jStatus = status[j] & 0xFF;
+					int jNote = data1[j] & 0xFF;
 					// if this is a note on or off message referring to the same note
 					if (jStatus == 128 || jStatus == 144 && jNote == iNote) {
 						// Then we now know the width of the previous note
 						// This is the time difference between the two note events
-						long diff = tracks[activeTrack].get(j).getTick() - lTick;
-						platWidth = (int) (platform_fill_factor * diff * song.getTempo() / 1000.0 * platform_speed);
+						long diff = ticks[j] - lTick;
+						platWidth = (int) (platform_fill_factor * diff * tempo / 1000.0 * platform_speed);
 						break; // Done looking!
 					}
 				}
 				// TODO only add TOP notes, i.e. notes with nothing below them
 				// To do this, we need only look at notes at the same midi tick
-				level.add(new Platform(platWidth, (int) (lTick * song.getTempo() / 1000.0 * platform_speed), world_height - 50 - (iNote - 60) * platform_height, iNote));
+				platforms.add(new Platform(platWidth, (int) (lTick * tempo / 1000.0 * platform_speed), world_height - 50 - (iNote - 60) * platform_height, iNote));
 			}
 		}
 		
-		// TODO Song tempo needs to be analyzed in order to determine speed of notes
-		//platform_speed = 10.0f;
-		levelSize = level.size();
+		// Culling depends on the platforms being in order of x. One track's notes already are, so this is cheap.
+		Collections.sort(platforms, new Comparator<Platform>() {
+			public int compare(Platform a, Platform b) {
+				return a.getX() - b.getX();
+			}
+		});
+		return platforms;
+	}
+	
+	/** Asks for a song to be loaded in the background. Once pollSong() returns true it's been installed and is
+	 *  ready to play. If the song was prefetched (see Playlist) this happens right away. */
+	public void requestSong(File source){
+		requested = source;
+		playlist.prefetch(source);
+	}
+	
+	/** Checks on the song asked for with requestSong(). Returns true (once) when it has been installed as the
+	 *  current level; the next song in the playlist then starts loading in the background. */
+	public boolean pollSong(){
+		if (requested == null || !playlist.isReady(requested)) {return false;}
 		
+		File source = requested;
+		requested = null;
+		StagedLevel staged = playlist.take(source);
+		if (staged == null) {
+			printLine("An error occurred while loading " + source.getName());
+			return false;
+		}
+		installLevel(staged);
+		playlist.setCurrent(source);
+		playlist.prefetch(playlist.getNext());
 		return true;
 	}
 	
+	/** Forgets about a song asked for with requestSong(), if it hasn't been installed yet. */
+	public void cancelSongRequest(){
+		requested = null;
+	}
+	
+	/** Returns the playlist, which loads upcoming songs in the background. */
+	public Playlist getPlaylist(){
+		return playlist;
+	}
+	
 	/** Returns the Song object which controls sound in the game. */
 	public Song getSong(){
 		return song;
 	}
 	
+	/** Returns the sound effects player. Effects use the Song until SoundEffects.prerender() is called. */
+	public SoundEffects getEffects(){
+		return effects;
+	}
+	
+	/** Returns the meter for how far apart the picture and the sound are (see LatencyMeter). */
+	public LatencyMeter getLatencyMeter(){
+		return latency;
+	}
+	
 	/** Releases resources, stops music, ends the game, and closes down the program. */
 	public void quit(){
 		//printLine("+-~-~-~-~-~-~-~-~-~+ Exit Game +~-~-~-~-~-~-~-~-~-~-~+");
 		//printLine("Thanks for playing!");
 		song.stop();
+		// These may not exist yet: if the MIDI devices fail to open, this is called from the constructor
+		if (effects != null) {effects.close();}
+		if (playlist != null) {playlist.shutdown();}
+		if (library != null) {library.shutdown();}
 		System.exit(0);
 	}
 	
@@ -558,6 +750,12 @@ public class Orpheus extends Program {
 		return vx;
 	}
 	
+	/** Returns the velocity the player moved with in the x-direction during the last update. Unlike getVX(),
+	 *  this isn't reset to 0 once the player has moved, so it says whether they're walking. */
+	public float getLastVX(){
+		return last_vx;
+	}
+	
 	/** Returns the velocity of the player in the x-direction. */
 	public float getVY(){
 		return vy;
@@ -620,8 +818,7 @@ public class Orpheus extends Program {
 		// Assume the player is falling...if they are standing on something then this will be changed.
 		player_state = PLAYER_FALLING;
 		// Check for collision
-		// For now, just loop through the entire level and see if we hit any platforms
-		// In a song with >1000 platforms, this could be slow. Before we optimize let's get it working.
+		// Only the platforms that can be on the screen (see cull()) are checked, however long the song is.
 		
 		// Collision with sides of the screen
 		// Left and right
@@ -651,10 +848,11 @@ public class Orpheus extends Program {
 		// Collision with platforms
 		Platform p;
 		
-		for (int i = 0; i < level.size(); i++){
+		for (int i = visStart; i < visEnd; i++){
 			p = level.get(i);
-			playerCollisionWithPlatform(p);
+			if (playerCollisionWithPlatform(p)) {cleansed.set(i);}
 		}
+		cycleTests += visEnd - visStart;
 		
 		// Move the player based on state
 		if (player_state == PLAYER_FALLING) {
@@ -664,6 +862,7 @@ public class Orpheus extends Program {
 		} 
 		// Falling, jumping, or on the ground: move the player left/right.
 		x += vx * (delta/1000.0f);
+		last_vx = vx;
 		vx= 0; // Reset the horizontal velocity; The game is more satisfying this way.
 		
 		// This makes the player move along with the platforms when they're standing on them, rather than slipping
@@ -677,10 +876,25 @@ public class Orpheus extends Program {
 		vy = Math.max(vy, -max_speed);
 	}
 	
-	public void playerCollisionWithPlatform(Platform p){
+	/** Adds a frame's collision checks to the current CollisionBatchEvent, committing it once it's full. Called
+	 *  once at the end of each cycle, however many steps it was split into. */
+	private void batchCollisions(int tests){
+		collisionBatch.frames++;
+		collisionBatch.tests += tests;
+		collisionBatch.maxTests = Math.max(collisionBatch.maxTests, tests);
+		if (collisionBatch.frames >= collision_batch_frames) {
+			collisionBatch.commit();
+			collisionBatch = new CollisionBatchEvent();
+			collisionBatch.begin();
+		}
+	}
+	
+	/** Checks the player against a platform, and moves them out of it if they've hit it. Returns true if that
+	 *  cleansed the platform. */
+	public boolean playerCollisionWithPlatform(Platform p){
 		
 		// Is the platform within the bounds of the screen? If it isn't, then the player can't collide with it
-		if (!platformInWorld(p)) {return;}			
+		if (!platformInWorld(p)) {return false;}			
 		
 		float left_overlap = 0;
 		float top_overlap = 0;
@@ -702,23 +916,28 @@ public class Orpheus extends Program {
 		// Add one to the top_overlap for the purposes of calculating if PLAYER_STANDING. Otherwise the player goes spastic
 		float top_overlap_adj = top_overlap + 1;
 		
-		if (top_overlap_adj <= 0) {return;}
-		if (bottom_overlap <= 0) {return;}
-		if (right_overlap <= 0) {return;}
-		if (left_overlap <= 0) {return;}
+		if (top_overlap_adj <= 0) {return false;}
+		if (bottom_overlap <= 0) {return false;}
+		if (right_overlap <= 0) {return false;}
+		if (left_overlap <= 0) {return false;}
+		collisionBatch.hits++;
 		
 		// There has been some kind of collision
-		if (p.getState() == Platform.platform_polluted) {
+		boolean cleansing = (p.getState() == Platform.platform_polluted);
+		if (cleansing) {
 			score += 1;
 			p.setState(Platform.platform_cleansed);
-			song.noteOn(45, 100, System.currentTimeMillis() + 500);
+			effects.play(SoundEffects.EFFECT_COLLISION);
+			latency.collision(System.nanoTime());
 			// Increase the player's willpower/health
 			healPlayer(1);
 		}
 		
 		// Find the smallest overlap and take care of that (it represents the most efficient way to move the player such that they are no longer intersecting the rectangle):
 		
-		if (top_overlap_adj <= left_overlap && top_overlap_adj <= right_overlap && top_overlap_adj <= bottom_overlap) {
+		// Only land if actually falling (or standing): otherwise a jump is undone by landing straight back on the
+		// platform it started from, when the step is short (as when a cycle is split up for input).
+		if (vy >= 0 && top_overlap_adj <= left_overlap && top_overlap_adj <= right_overlap && top_overlap_adj <= bottom_overlap) {
 			// We have collided with the top of the platform
 			// Now the player is standing
 			player_state = PLAYER_STANDING;
@@ -736,18 +955,91 @@ public class Orpheus extends Program {
 			// We have collided with the bottom of the platform
 			// Do nothing for now
 		}
-		
+		return cleansing;
 
 	}
 	
 	//===================/ /===========================/
 	
-	/** Runs one cycle of the game, of length delta (in milliseconds). */
+	/** Runs one cycle of the game, of length delta (in milliseconds, scaled by the time scale), moving the player
+	 *  as the controls say. Rather than acting on the controls once at the start, the cycle is split at every
+	 *  press and release, so a jump happens at the moment the key went down, to the millisecond, however long
+	 *  the frame is. 'frameStart' and 'frameEnd' are the System.nanoTime()s the cycle stands for, i.e. when the
+	 *  last cycle ran and now; input from outside that is moved to the nearest end. */
+	public void cycle(long delta, Controls controls, long frameStart, long frameEnd){
+		delta = scaleDelta(delta);
+		cycleTests = 0;
+		long span = Math.max(frameEnd - frameStart, 1);
+		long done = 0; // How much of the cycle has been run so far, in ms
+		for (int i = 0; i < controls.getEventCount(); i++){
+			// Where this event falls within the cycle
+			long at = (controls.getEventTime(i) - frameStart) * delta / span;
+			at = Math.max(done, Math.min(delta, at));
+			step(at - done, controls, i);
+			done = at;
+			if (controls.getEventAction(i) == Controls.JUMP && controls.isEventPress(i)) {jump();}
+		}
+		step(delta - done, controls, controls.getEventCount());
+		collisionTests = cycleTests;
+		batchCollisions(cycleTests);
+	}
+	
+	/** Runs part of a cycle, with the player doing whatever was held just before the given event. */
+	private void step(long delta, Controls controls, int event){
+		while (delta > 0) {
+			long d = Math.min(delta, max_step);
+			delta -= d;
+			// Holding jump keeps jumping, whenever the player lands
+			if (controls.isDownBefore(Controls.JUMP, event)) {jump();}
+			if (controls.isDownBefore(Controls.LEFT, event)) {
+				moveLeft();
+			} else if (controls.isDownBefore(Controls.RIGHT, event)) {
+				moveRight();
+			}
+			if (controls.isDownBefore(Controls.DOWN, event)) {moveDown();}
+			updatePlatforms(d);
+			updatePlayer(d);
+		}
+	}
+	
+	/** Runs one cycle of the game, of length delta (in milliseconds, scaled by the time scale). */
 	public void cycle(long delta){
-		// Update the player
-		updatePlayer(delta);
-		// Move the platforms
-		updatePlatforms(delta);
+		delta = scaleDelta(delta);
+		cycleTests = 0;
+		while (delta > 0) {
+			long d = Math.min(delta, max_step);
+			delta -= d;
+			// Update the player
+			updatePlayer(d);
+			// Move the platforms
+			updatePlatforms(d);
+		}
+		collisionTests = cycleTests;
+		batchCollisions(cycleTests);
+	}
+	
+	/** Turns a cycle's length in real time into game time. Fractions of a ms are carried over to the next cycle,
+	 *  so slow motion doesn't lose time and fall behind the music. */
+	private long scaleDelta(long delta){
+		double exact = delta * time_scale + scale_carry;
+		long scaled = (long) exact;
+		scale_carry = exact - scaled;
+		return scaled;
+	}
+	
+	/** Sets how fast the game runs, as a multiple of real time (between min_time_scale and max_time_scale). The
+	 *  music is sped up or slowed down to match, and above mute_time_scale everything is muted. */
+	public void setTimeScale(float scale){
+		time_scale = Math.max(min_time_scale, Math.min(max_time_scale, scale));
+		song.setTempoFactor(time_scale);
+		boolean mute = time_scale > mute_time_scale;
+		song.setMuted(mute);
+		effects.setMuted(mute);
+	}
+	
+	/** Returns how fast the game runs, as a multiple of real time. */
+	public float getTimeScale(){
+		return time_scale;
 	}
 	
 	
@@ -756,11 +1048,13 @@ public class Orpheus extends Program {
 	/** Moves the platforms, and plays the note if it reaches the left edge of the screen. */
 	public void updatePlatforms(long delta){
 		plat_x = plat_x - (platform_speed) * (delta / 1000.0f);
+		cull();
 		Platform p;
-		for (int i = 0; i < level.size(); i++){
+		// Anything past the screen hasn't gone off the left yet, so only look up to the end of what's visible
+		for (int i = firstLive; i < visEnd; i++){
 			p = level.get(i);
 			// If the rightmost edge of the platform has left the screen
-			if ((p.getX() + plat_x + p.getWidth()) < 0) {
+			if (p.getState() != Platform.platform_played && (p.getX() + plat_x + p.getWidth()) < 0) {
 				// Was the platform activated?
 				if (p.getState() == Platform.platform_cleansed) {
 					// Increase the score of the player and play the sound
@@ -768,29 +1062,106 @@ public class Orpheus extends Program {
 				} else if (p.getState() == Platform.platform_polluted) {
 					// The player gets no points, and some discordant sound is produced
 					// TODO consider whether or not to leave out this line
-					//song.noteOn((p.getNote() + 6 + RNG.nextInt(3)) % 127, 127, System.currentTimeMillis() + 50);
+					//effects.playTone(p.getNote() + 6 + RNG.nextInt(3));
 				}
-				// Kill the platform
-				level.remove(i);
+				// Kill the platform. It stays in the level (so the level can be replayed from any point), but
+				// it's done with.
+				p.setState(Platform.platform_played);
 			}
 		}
+		// Past restoredEnd the states may be from before a seek, so they can't be trusted yet
+		while (firstLive < restoredEnd && level.get(firstLive).getState() == Platform.platform_played) {
+			firstLive++;
+		}
 	}
 	
+	/** Works out which platforms can be on the screen, by binary search: the platforms are sorted by x, and
+	 *  none is wider than maxPlatformWidth, so anything that starts more than that far left of the screen, or
+	 *  right of its right edge, can't be on it. */
+	private void cull(){
+		visStart = searchPlatforms(-maxPlatformWidth, false);
+		visEnd = searchPlatforms(world_width, true);
+		// Platforms coming onto the screen since a seek get the state they had (or were given)
+		while (restoredEnd < visEnd) {
+			level.get(restoredEnd).setState(cleansed.get(restoredEnd) ? Platform.platform_cleansed : Platform.platform_polluted);
+			restoredEnd++;
+		}
+	}
+	
+	/** Jumps to the given time in the song (in ms), e.g. to practise part of it. The sequencer is moved there,
+	 *  and so are the platforms: the ones before it count as played, and the rest are cleansed or polluted as
+	 *  'states' says (see getCleansed()). If 'states' is null, what the player has cleansed so far stays that
+	 *  way. The score is set to match. Only the platforms around the new position are looked at (the rest are
+	 *  put right as they come onto the screen), so this is as quick in a long song as in a short one. */
+	public void seek(long ms, BitSet states){
+		if (states != null) {cleansed = (BitSet) states.clone();}
+		ms = Math.max(0, ms);
+		plat_x = (latency.getOffset() - ms) * platform_speed / 1000;
+		// Anything that starts further left than the widest platform has gone off the screen
+		firstLive = searchPlatforms(-maxPlatformWidth, false);
+		restoredEnd = firstLive;
+		cull();
+		score = cleansed.cardinality();
+		song.seek(ms);
+		latency.resync();
+	}
+	
+	/** Jumps to the given time in the song (in ms), keeping what's been cleansed. See seek(long, BitSet). */
+	public void seek(long ms){
+		seek(ms, null);
+	}
+	
+	/** Returns which platforms (by index in getLevel()) the player has cleansed, as a copy which can be handed
+	 *  back to seek() later, e.g. to go back to the start of a practice loop as it was. */
+	public BitSet getCleansed(){
+		return (BitSet) cleansed.clone();
+	}
+	
+	/** Returns the index of the first platform whose left edge is right of the given screen x (or at it, if
+	 *  'orAt' is true), or the number of platforms if there isn't one. */
+	private int searchPlatforms(float screenX, boolean orAt){
+		float worldX = screenX - plat_x;
+		int lo = 0, hi = level.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int px = level.get(mid).getX();
+			if (px > worldX || (orAt && px == worldX)) {hi = mid;}
+			else {lo = mid + 1;}
+		}
+		return lo;
+	}
+	
+	/** Returns the index of the first platform that might be on the screen. Together with getVisibleEnd(),
+	 *  this is the only part of getLevel() that needs drawing; check each with platformInWorld(). */
+	public int getVisibleStart(){
+		return visStart;
+	}
 	
-	/** Returns true if the given platform is currently within screen coordinates. */
+	/** Returns one past the index of the last platform that might be on the screen. */
+	public int getVisibleEnd(){
+		return visEnd;
+	}
+	
+	
+	/** Returns the number of platforms the player was checked against in the last frame. */
+	public int getCollisionTests(){
+		return collisionTests;
+	}
+	
+	/** Returns how far into the song the platforms have scrolled, in ms: the time of the note whose platform
+	 *  would be at the left edge of the screen right now, without the calibration offset. When the game is in
+	 *  sync, this is where the sequencer is. */
+	public long getScrollPosition(){
+		return (long) (-plat_x / platform_speed * 1000) + latency.getOffset();
+	}
+	
+	/** Returns true if any part of the given platform is currently within screen coordinates. (Checking just
+	 *  the corners isn't enough: a platform wider than the screen has none of them on it.) */
 	public boolean platformInWorld(Platform p) {
-		
-		Rectangle r = new Rectangle();
-		r.setBounds(0, 0, world_width, world_height);		
-		
-		if (!r.contains((int) (p.getX() + plat_x), (int) (p.getY() + plat_y)) &&
-				!r.contains((int) (p.getX() + plat_x), (int) (p.getY() + plat_y + platform_height)) &&
-				!r.contains((int) (p.getX() + plat_x + p.getWidth()), (int) (p.getY() + plat_y)) &&
-				!r.contains((int) (p.getX() + plat_x + p.getWidth()), (int) (p.getY() + plat_y + platform_height))) {
-					// This platform is not in the world
-					return false;
-				}
-		return true;
+		float left = p.getX() + plat_x;
+		float top = p.getY() + plat_y;
+		// The two intervals overlap on both axes
+		return left < world_width && left + p.getWidth() > 0 && top < world_height && top + platform_height > 0;
 	}
 	
 	/** Gets the height (in pixels) of all platforms. */
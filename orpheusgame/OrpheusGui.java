@@ -2,12 +2,15 @@ package orpheusgame;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Transparency;
-import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -21,51 +24,164 @@ public class OrpheusGui implements TimerOwner, PanelOwner {
 	
 	private JFrame jWnd;
 	private Timer timer;
+	// Live numbers for JMX tools
+	private EngineStats stats;
 	private Panel panel;
 	
 	private Orpheus game;
 	
-	// Random number generator for general use
-	private Random RNG;
-	
 	private PlayerView pView;
 	private PlatformView platView;
 	
-	private ArrayList<Tile> tArray; // Stores all the background tiles
-	private float tileOffset; // Changes as the background moves
+	private ParallaxBackground scroller; // The background tiles, which move from right to left
 	private Sprite[] sWater; // For the background tiles
 	private Sprite[] sBottom; // Goes above the water tiles
-	private float tileSpeed; // The speed at which tiles move from right to left
 	
 	// The next game state to move into - for the MENU system
 	private int menuSelection;
+	// The first song shown on the level select screen, which scrolls to keep menuSelection in view
+	private int listTop;
+	// The number of songs shown on the level select screen at once
+	private static final int listRows = 10;
 	// The splash screen title text
 	private Sprite sprMain;
 	// The cursor used to select menu items
 	private Sprite cursor;
 	// The font used for most of the text within the game
 	private Font fOrpheus;
+	// Text in fOrpheus that changes while playing (the score, the level list), drawn from pre-made images
+	private TextCache text;
+	// The keys, as actions (LEFT, JUMP...); brought up to date at the start of every cycle()
+	private Controls controls = new Controls();
+	// When the last cycle ran (System.nanoTime()), so input can be placed within the frame; 0 before the first
+	private long lastCycle;
+	// Times each part of the frame; F3 shows the times on screen, F4 saves them to a file
+	private FrameProfiler profiler = new FrameProfiler();
 	// The gold awesome color
 	public static final Color cGold = new Color(0xFF, 0xDC, 0x20);
 	// The background for most of the game. It's grayscale so we can add cool colors to it later
 	private Sprite cave;
+	// Keeps the parts of the screen that don't change between frames, so they aren't redrawn every frame
+	private Compositor compositor;
+	// The level, platform offset and speed in the last frame drawn, for the latency meter; null if it isn't on
+	private ArrayList<Platform> shownLevel;
+	private float shownOffsetX, shownSpeed;
+	// How far page up and down skip through the song, in ms
+	private static final long seek_step = 5000;
+	// Where the practice loop starts (in ms; -1 if it hasn't been marked), and what was cleansed then
+	private long loopTime = -1;
+	private BitSet loopStates;
+	
+	// True until the constructor has finished; drawGame() shows a loading screen until then
+	private volatile boolean loading = true;
+	// The stages of starting up, shown on the loading screen; null once they're done (or without a window)
+	private volatile Bootstrap bootstrap;
+	// The loading screen's font, which (unlike fOrpheus) is there from the start
+	private Font fLoading = new Font(Font.SANS_SERIF, Font.PLAIN, 14);
 	
 	public OrpheusGui(){
+		// Everything that can happen at once does, in stages (see Bootstrap), so the game only has to wait for
+		// the slowest of them. The loading screen shows how they're getting on.
+		game = new Orpheus(800, 600, false);
+		panel = new Panel(800, 600, this);
+		final Bootstrap boot = new Bootstrap();
+		boot.setListener(new Runnable() {
+			public void run() {
+				panel.repaint();
+			}
+		});
+		
+		// Opening the synthesizer is the slowest part, and nothing but the music needs it
+		CompletableFuture<Void> devices = boot.stage("devices", new Runnable() {
+			public void run() {
+				game.openDevices();
+			}
+		});
+		// Every sprite we need is decoded in the background and in parallel; setUp() then just picks them up
+		CompletableFuture<Void> sprites = boot.stage("sprites", SpriteManager.get().preload("resources/sprites/manifest.txt"));
+		// The panel has no size until the window is packed, which may not have happened yet
+		boot.stage("scene", new Runnable() {
+			public void run() {
+				setUp(game.getWidth(), game.getHeight());
+			}
+		}, sprites);
+		boot.stage("font", new Runnable() {
+			public void run() {
+				fOrpheus = new Font("Blackmoor LET", Font.PLAIN, 30);
+				text = new TextCache(fOrpheus);
+			}
+		});
+		// Render the menu and collision sounds with the harp (or read them from the disk cache). This uses a
+		// synthesizer of its own, so it doesn't need the devices either.
+		boot.stage("sounds", new Runnable() {
+			public void run() {
+				game.getEffects().prerender(46);
+			}
+		});
+		// Let's have a nice menu song too
+		CompletableFuture<Void> menuSong = boot.stage("menu song", new Runnable() {
+			public void run() {
+				game.loadSong(new File("bin/orpheusgame/resources/music/Epica.mid"));
+			}
+		});
+		boot.stage("music", new Runnable() {
+			public void run() {
+				// Harp instrument
+				game.getSong().setChannelInstrument(0, 46);
+				if (game.getLevelSize() > 0) {game.getSong().play();}
+			}
+		}, devices, menuSong);
+		bootstrap = boot;
+		
+		// Meanwhile, put the loading screen up
 		jWnd = new JFrame("Project Orpheus");
 		jWnd.setResizable(false);
 		jWnd.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		jWnd.setLocationRelativeTo(null);
 		jWnd.setIgnoreRepaint(true);	
-		panel = new Panel(800, 600, this);
 		jWnd.add(panel); // Since panel is a JPanel, we must add() it in order for it to be visible!	
 		jWnd.pack();
 		jWnd.setVisible(true);	
-		game = new Orpheus(800, 600);
-		fOrpheus = new Font("Blackmoor LET", Font.PLAIN, 30);
+		panel.repaint();
 		
-		// Initialize the random number generator
-		RNG = new Random();
+		boolean started = boot.await();
+		System.out.print(boot);
+		if (!started) {
+			// Something we need is missing (the stage that failed is printed above), so there's no game to play
+			System.out.println("Project Orpheus couldn't start.");
+			game.quit();
+		}
+		
+		loading = false;
+		bootstrap = null;
+		timer = new Timer(25, this);
+		timer.setProfiler(profiler);
+		// Let JMX tools (jconsole etc.) watch the game as it runs. This has to be there before the timer starts:
+		// keys pressed while loading are handled on its first cycle, and quitting unregisters the stats.
+		stats = new EngineStats(game, timer);
+		stats.register();
+		timer.start();
+	}
+	
+	/** Sets up everything needed to draw the given game, but without a window, a timer or any sound: the game is
+	 *  only drawn when drawGame() is called, onto whatever graphics context it's given (an image, say). This
+	 *  works with java.awt.headless, and is what the benchmarks use. */
+	public OrpheusGui(Orpheus game, int width, int height){
+		SpriteManager.get().preload("resources/sprites/manifest.txt");
+		
+		fOrpheus = new Font("Blackmoor LET", Font.PLAIN, 30);
+		text = new TextCache(fOrpheus);
+		// Never shown, but drawGame() gets the screen size from it and HandleKeys() the keys
+		panel = new Panel(width, height, this);
+		panel.setSize(width, height);
+		this.game = game;
 		
+		setUp(width, height);
+		loading = false;
+	}
+	
+	/** Loads the sprites and sets up everything drawGame() needs, for a screen of the given size. */
+	private void setUp(int width, int height){
 		// Make the color
 		//cGold = new Color(0xFF, 0xDC, 0x20);
 		// Load up splash art (for menu)
@@ -73,8 +189,8 @@ public class OrpheusGui implements TimerOwner, PanelOwner {
 		// Load cursor
 		cursor = SpriteManager.get().getSprite("resources/sprites/cursor.png", Transparency.TRANSLUCENT);
 		// Load the cave background
-		cave = SpriteManager.get().getSprite("resources/sprites/cave.bmp", Transparency.OPAQUE);
-		cave.setImage(SpriteManager.get().mutateRGB(cave.getImage(), new Color(32, 18, 0)));
+		cave = SpriteManager.get().getTintedSprite("resources/sprites/cave.bmp", Transparency.OPAQUE, new Color(32, 18, 0));
+		compositor = new Compositor(width, height);
 		
 		// Set up main menu splash screen cursor to point at the first object
 		menuSelection = 0;
@@ -85,180 +201,330 @@ public class OrpheusGui implements TimerOwner, PanelOwner {
 		
 		// Set up the background tiles
 		Color cMutate = new Color(90, 115, 64);
-		tileSpeed = -1.0f;
 		sWater = new Sprite[3];
-		sWater[0] = SpriteManager.get().getSprite("resources/sprites/Water 1.bmp");
-		sWater[0].setImage(SpriteManager.get().mutateRGB(sWater[0].getImage(), cMutate));
+		sWater[0] = SpriteManager.get().getTintedSprite("resources/sprites/Water 1.bmp", Transparency.BITMASK, cMutate);
 		
-		sWater[1] = SpriteManager.get().getSprite("resources/sprites/Water 2.bmp");
-		sWater[1].setImage(SpriteManager.get().mutateRGB(sWater[1].getImage(), cMutate));
+		sWater[1] = SpriteManager.get().getTintedSprite("resources/sprites/Water 2.bmp", Transparency.BITMASK, cMutate);
 		
-		sWater[2] = SpriteManager.get().getSprite("resources/sprites/Water 3.bmp");
-		sWater[2].setImage(SpriteManager.get().mutateRGB(sWater[2].getImage(), cMutate));
+		sWater[2] = SpriteManager.get().getTintedSprite("resources/sprites/Water 3.bmp", Transparency.BITMASK, cMutate);
 		
 		sBottom = new Sprite[2];
-		sBottom[0] = SpriteManager.get().getSprite("resources/sprites/Cave Bottom 1.png");
-		sBottom[0].setImage(SpriteManager.get().mutateRGB(sBottom[0].getImage(), cMutate));
-		
-		sBottom[1] = SpriteManager.get().getSprite("resources/sprites/Cave Bottom 2.png");
-		sBottom[1].setImage(SpriteManager.get().mutateRGB(sBottom[1].getImage(), cMutate));
-		
-		tArray = new ArrayList<Tile>();
-		// Create water tiles
-		for (int i = 0; i < panel.getWidth()/64 + 2; i++){
-			Tile t = new Tile();
-			t.setX(i*64);
-			t.setY(panel.getHeight() - 64);
-			t.setSprite(sWater[RNG.nextInt(3)]);
-			tArray.add(t);
-		}
-		// Create more tiles
-		for (int i = 0; i < panel.getWidth()/64 + 2; i++){
-			Tile t = new Tile();
-			t.setX(i*64);
-			t.setY(panel.getHeight() - 128);
-			t.setSprite(sBottom[RNG.nextInt(2)]);
-			tArray.add(t);
-		}
+		sBottom[0] = SpriteManager.get().getTintedSprite("resources/sprites/Cave Bottom 1.png", Transparency.BITMASK, cMutate);
 		
-		// Harp instrument
-		game.getSong().setChannelInstrument(0, 46);
-		
-		// TODO Implement a quick loading screen...it takes a few seconds to get anything on the screen
-		// Let's have a nice menu song too
-		if (game.loadSong(new File("bin/orpheusgame/resources/music/Epica.mid"))){
-			game.getSong().play();
-		}
+		sBottom[1] = SpriteManager.get().getTintedSprite("resources/sprites/Cave Bottom 2.png", Transparency.BITMASK, cMutate);
 		
+		// The cave bottom is further away than the water, so it moves slower. Both move slower than the
+		// platforms, which are right in front of us.
+		scroller = new ParallaxBackground();
+		scroller.addLayer(new ParallaxLayer(sBottom, height - 128, 0.4f, width));
+		scroller.addLayer(new ParallaxLayer(sWater, height - 64, 0.55f, width));
 		
-		timer = new Timer(25, this);
-		timer.start();
+		// Everything small is loaded now: pack it into as few surfaces as we can
+		SpriteManager.get().packAtlas();
 	}
 	
 	public void cycle(long delta) {
 		
-		tileOffset += tileSpeed;
+		// Move the tile background
+		scroller.update(delta, game.getPlatformSpeed() * game.getTimeScale());
 		
+		// Take in whatever was pressed and let go since the last frame
+		long t = profiler.begin();
+		long now = System.nanoTime();
+		long frameStart = (lastCycle == 0) ? now - delta * 1000000 : lastCycle;
+		lastCycle = now;
+		controls.update(panel.getInputQueue());
+		profiler.end(FrameProfiler.SECTION_INPUT, t);
+		
+		// The player's moves are applied inside the game's cycle, at the moment each key went down or up
+		t = profiler.begin();
 		if (game.getGameState() == Orpheus.GAME_PLAYING) {
-			game.updatePlatforms(delta);
-			game.updatePlayer(delta);
-			//Update the PlayerView
-			pView.update(delta);
-			// Move the tile background
+			game.cycle(delta, controls, frameStart, now);
 		}
+		profiler.end(FrameProfiler.SECTION_SIM, t);
 		
 		// Allow the music to update itself, e.g. turn off notes and such
+		t = profiler.begin();
 		game.getSong().updateNotes(System.currentTimeMillis());
+		profiler.end(FrameProfiler.SECTION_AUDIO, t);
+		
+		// Start a song that was asked for once it has finished loading in the background
+		if (game.pollSong()) {
+			loopTime = -1;
+			game.resetPlayer();
+			game.setGameState(Orpheus.GAME_PLAYING);
+			game.getSong().play();
+		}
 		
 		HandleKeys();
 		
+		if (game.getGameState() == Orpheus.GAME_PLAYING) {
+			pView.update(Math.round(delta * game.getTimeScale()), game.getPlayerState(), game.getLastVX(), game.getVY());
+		}
+		
 		
 		// Did the player win?
 		if (game.getGameState() == Orpheus.GAME_PLAYING && game.getSong().isOver() == true) {;
 			game.setGameState(Orpheus.GAME_WON);
 		}
 		
-		// Trigger a repaint
-		panel.repaint();
+		// Draw the next frame, then have only the parts of the screen that changed copied over
+		render();
+		Rectangle damage = compositor.getDamage();
+		if (damage != null) {panel.repaint(damage);}
 	}
 
 	/** Whenever a repaint of the panel is called, it will respond by giving us a
-	 *  graphics object to control drawing with. */
+	 *  graphics object to control drawing with. The frame has already been drawn (see render()); this just
+	 *  copies the part of it inside g's clip, which is whatever changed since the last paint (see cycle()) or
+	 *  whatever the window system wants redrawn. */
 	public void drawGame(Graphics g) {
 		
-		// Always draw the cave background
-		cave.draw(g, 0, 0);		
+		// Nothing else is ready yet
+		if (loading) {
+			drawLoading(g);
+			return;
+		}
 		
-		// Always draw the background tiles
-		Tile t;
-		for (int i = 0; i < tArray.size(); i++) {
-			t = tArray.get(i);
-			t.drawTile(g, (int) tileOffset);
-			// If a tile goes off the screen, we need to reset it
-			if (t.getX() + tileOffset + 64 < 0){
-				t.setX(t.getX() + 64*(panel.getWidth()/64 + 2));
-				// Should also reset the image to something random for fun
-			}
+		ArrayList<Platform> level;
+		float offsetX, speed;
+		synchronized (compositor) {
+			compositor.present(g);
+			level = shownLevel;
+			offsetX = shownOffsetX;
+			speed = shownSpeed;
+		}
+		LatencyMeter meter = game.getLatencyMeter();
+		if (meter.isEnabled() && level != null) {
+			meter.frameShown(level, offsetX, speed, System.nanoTime());
 		}
+	}
+	
+	/** Draws the next frame into the compositor, ready for drawGame() to copy to the screen. This is called by
+	 *  cycle(), on the game thread. */
+	public void render() {
+		long t = profiler.begin();
+		int state = game.getGameState();
 		
-		g.setFont(fOrpheus);
-		g.setColor(cGold);
+		// drawGame() may be copying the last frame to the screen at the same time
+		synchronized (compositor) {
+			renderFrame(state);
+		}
+		profiler.end(FrameProfiler.SECTION_PAINT, t);
+	}
+	
+	/** Draws everything for the given state into the compositor's frame. */
+	private void renderFrame(int state) {
+		// The parts of the screen that don't move are drawn once, and then kept until the game state changes
+		if (compositor.needsBackground(state)) {
+			Graphics2D bg = compositor.beginBackground(state);
+			drawBackground(bg, state);
+			bg.dispose();
+		}
 		
-		if (game.getGameState() == Orpheus.GAME_MAIN_MENU) {
-			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
-			g.setColor(cGold);
-			g.drawString("Play", 365, 300);
-			g.drawString("About", 355, 375);
-			g.drawString("Quit", 365, 450);
-			cursor.draw(g, 280, 275 + 75*menuSelection);//
-			cursor.drawFlipped(g, 470, 275 + 75*menuSelection);
-		} else if (game.getGameState() == Orpheus.GAME_ABOUT) {
-			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
-			g.drawString("HOW TO PLAY", 300, 210);
-			g.drawString("Use the arrow keys to move and the Z key to jump.", 90, 300);
-			g.drawString("Touch the dead notes to enliven them - and score points!", 40, 350);
-		} else if (game.getGameState() == Orpheus.GAME_LVL_SELECT) {
-			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
-			g.drawString("SELECT LEVEL", 300, 225);
-			File[] fList = game.enumerateSongs();
-			//Will only display the first 10 songs! Otherwise they'd trail off the screen
-			for (int i = 0; i < 10; i++) {
-				if (fList.length <= i) {
-					g.drawString("...", 280, 300 + i*25);
+		// Everything below is drawn over what's left of the last frame, once the compositor has erased it.
+		// Anything drawn has to be marked, so it's erased again next frame.
+		Graphics2D fg = compositor.beginFrame();
+		
+		// Always draw the background tiles
+		scroller.draw(fg);
+		scroller.mark(compositor, panel.getWidth());
+		
+		if (state == Orpheus.GAME_MAIN_MENU) {
+			cursor.draw(fg, 280, 275 + 75*menuSelection);//
+			cursor.drawFlipped(fg, 470, 275 + 75*menuSelection);
+			compositor.mark(280, 275 + 75*menuSelection, cursor.getWidth(), cursor.getHeight());
+			compositor.mark(470, 275 + 75*menuSelection, cursor.getWidth(), cursor.getHeight());
+		} else if (state == Orpheus.GAME_LVL_SELECT) {
+			// Straight from the library's index: no disk access while drawing
+			SongInfo[] songs = game.getLibrary().getSongs();
+			//Only displays listRows songs at a time, otherwise they'd trail off the screen
+			for (int i = 0; i < listRows; i++) {
+				if (songs.length <= listTop + i) {
+					drawText(fg, game.getLibrary().isScanning() ? "Scanning..." : "...", cGold, 280, 300 + i*25);
+					break;
 				} else {
-				g.drawString(fList[i].getName(), 280, 300 + i*25);
+					SongInfo info = songs[listTop + i];
+					long seconds = info.getDuration() / 1000;
+					drawText(fg, info.getName() + " (" + seconds / 60 + ":" + (seconds % 60 < 10 ? "0" : "") + seconds % 60 + ")", cGold, 280, 300 + i*25);
 				}
 			}
 			// The cursor
-			cursor.draw(g, 200, 275 + 25*menuSelection);
+			cursor.draw(fg, 200, 275 + 25*(menuSelection - listTop));
+			compositor.mark(200, 275 + 25*(menuSelection - listTop), cursor.getWidth(), cursor.getHeight());
 			//cursor.drawFlipped(g, 555, 275 + 25*menuSelection);
-		} else if (game.getGameState() == Orpheus.GAME_PLAYING) {
-			// All drawing can be done here.
+		} else if (state == Orpheus.GAME_PLAYING) {
+			// All drawing can be done here. Only the platforms that might be on screen are looked at.
 			ArrayList<Platform> level = game.getLevel();
 			Platform p;
-			for (int i = 0; i < level.size(); i++){
+			for (int i = game.getVisibleStart(); i < Math.min(game.getVisibleEnd(), level.size()); i++){
 				p = level.get(i);
-				platView.drawPlatform(g, p.getX() + (int) game.getPlatformOffsetX(), p.getY(), p.getWidth(), game.getPlatformHeight(), p.getState());
+				if (!game.platformInWorld(p)) {continue;}
+				int px = p.getX() + (int) game.getPlatformOffsetX();
+				platView.drawPlatform(fg, px, p.getY(), p.getWidth(), game.getPlatformHeight(), p.getState());
+				// The shadow sticks up 4 pixels above the platform
+				compositor.mark(px, p.getY() - 4, p.getWidth(), game.getPlatformHeight() + 4);
 			}
 			
 			// Draw the character
-			pView.drawPlayer(g, (int) game.getX() - 3, (int) game.getY(), game.getPlayerState(), game.getVX(), game.getVY());
+			pView.drawPlayer(fg, (int) game.getX() - 3, (int) game.getY());
+			compositor.mark((int) game.getX() - 3, (int) game.getY(), 24, 24);
 			// Bounding boxes for debugging
 //			g.setColor(Color.yellow);
 //			g.drawRect((int)game.getX(), (int)game.getY(), game.getPlayerWidth(), game.getPlayerHeight());
 			
 			// Draw the status bar (displays health)
-			g.setColor(Color.yellow);
-			g.drawRect(10, 10, 30, 60);
-			g.setColor(Color.cyan);
+			fg.setColor(Color.yellow);
+			fg.drawRect(10, 10, 30, 60);
+			fg.setColor(Color.cyan);
 			int height = (int) (1.0 * game.getHealth() / game.max_health * 57);
-			g.fillRect(12, 12 + 57 - height, 27, height);
-			g.setColor(Color.white);
-			g.drawLine(15, 15, 15, 55);
+			fg.fillRect(12, 12 + 57 - height, 27, height);
+			fg.setColor(Color.white);
+			fg.drawLine(15, 15, 15, 55);
+			compositor.mark(10, 10, 31, 61);
 			
 			// Display the score
-			g.setColor(Color.yellow);
-			g.drawString("Score: " + game.getScore(), 550, 50);
-		} else if (game.getGameState() == Orpheus.GAME_OVER) {
+			int sx = 550 + drawText(fg, "Score: ", Color.yellow, 550, 50);
+			drawNumber(fg, game.getScore(), Color.yellow, sx, 50);
+			// Slow motion or fast-forward
+			float scale = game.getTimeScale();
+			if (scale != 1) {
+				drawText(fg, scale < 1 ? "x" + scale : "x" + (int) scale, Color.yellow, 550, 80);
+			}
+		} else if (state == Orpheus.GAME_OVER) {
+			drawFinalScore(fg, Color.RED);
+		} else if (state == Orpheus.GAME_WON) {
+			drawFinalScore(fg, cGold);
+		}
+		
+		// The latency meter is told about the frame once it's on the screen, with where the platforms were then
+		shownLevel = null;
+		if (game.getLatencyMeter().isEnabled() && state == Orpheus.GAME_PLAYING) {
+			shownLevel = game.getLevel();
+			shownOffsetX = game.getPlatformOffsetX();
+			shownSpeed = game.getPlatformSpeed() * game.getTimeScale();
+			fg.setFont(fLoading);
+			fg.setColor(Color.white);
+			String s = "Measuring A/V latency (F5)";
+			fg.drawString(s, 10, panel.getHeight() - 10);
+			FontMetrics fm = fg.getFontMetrics();
+			compositor.mark(10, panel.getHeight() - 10 - fm.getAscent(), fm.stringWidth(s), fm.getHeight());
+		}
+		
+		if (profiler.isOverlayShown()) {
+			int ox = panel.getWidth() - 260;
+			profiler.drawOverlay(fg, ox, 80);
+			compositor.mark(ox, 80, profiler.getOverlayWidth(), profiler.getOverlayHeight());
+		}
+		
+		fg.dispose();
+	}
+	
+	/** Draws the "Your score: x/y" line of the game over and winning screens. */
+	private void drawFinalScore(Graphics g, Color c) {
+		int x = 285;
+		x += drawText(g, "Your score: ", c, x, 300);
+		x += drawNumber(g, game.getScore(), c, x, 300);
+		x += drawText(g, "/", c, x, 300);
+		drawNumber(g, game.getLevelSize(), c, x, 300);
+	}
+	
+	/** Draws a string from the text cache, and marks it for the compositor. Returns the width of the string. */
+	private int drawText(Graphics g, String s, Color c, int x, int y) {
+		int w = text.drawString(g, s, c, x, y);
+		compositor.mark(x - text.getPadding(), y - text.getAscent(), w + 2*text.getPadding(), text.getHeight());
+		return w;
+	}
+	
+	/** Draws a number from the text cache's digits, and marks it for the compositor. Returns its width. */
+	private int drawNumber(Graphics g, int n, Color c, int x, int y) {
+		int w = text.drawNumber(g, n, c, x, y);
+		compositor.mark(x - text.getPadding(), y - text.getAscent(), w + 2*text.getPadding(), text.getHeight());
+		return w;
+	}
+	
+	/** Draws the loading screen: a bar, and how each stage of starting up is getting on. */
+	private void drawLoading(Graphics g) {
+		g.setColor(Color.black);
+		g.fillRect(0, 0, panel.getWidth(), panel.getHeight());
+		g.setFont(fLoading);
+		g.setColor(cGold);
+		g.drawString("Loading...", 340, 200);
+		
+		Bootstrap boot = bootstrap;
+		if (boot == null) {return;}
+		int count = boot.getStageCount();
+		g.drawRect(250, 215, 300, 12);
+		if (count > 0) {g.fillRect(250, 215, 300 * boot.getFinishedCount() / count, 12);}
+		for (int i = 0; i < count; i++){
+			long ms = boot.getDuration(i);
+			String status = boot.isFinished(i) ? ms + " ms" : (boot.isRunning(i) ? "..." : "waiting");
+			g.setColor(boot.isFinished(i) ? cGold : Color.gray);
+			g.drawString(boot.getStageName(i), 300, 260 + 20*i);
+			g.drawString(status, 440, 260 + 20*i);
+		}
+	}
+	
+	/** Draws the parts of the screen that stay put in the given game state: the cave, and the splash art and
+	 *  fixed text of the menus. */
+	private void drawBackground(Graphics g, int state) {
+		cave.draw(g, 0, 0);
+		
+		g.setFont(fOrpheus);
+		g.setColor(cGold);
+		
+		if (state == Orpheus.GAME_MAIN_MENU) {
+			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
+			g.drawString("Play", 365, 300);
+			g.drawString("About", 355, 375);
+			g.drawString("Quit", 365, 450);
+		} else if (state == Orpheus.GAME_ABOUT) {
+			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
+			g.drawString("HOW TO PLAY", 300, 210);
+			g.drawString("Use the arrow keys to move and the Z key to jump.", 90, 300);
+			g.drawString("Touch the dead notes to enliven them - and score points!", 40, 350);
+		} else if (state == Orpheus.GAME_LVL_SELECT) {
+			sprMain.draw(g, (game.getWidth() - sprMain.getWidth()) / 2, 100);
+			g.drawString("SELECT LEVEL", 300, 225);
+		} else if (state == Orpheus.GAME_OVER) {
 			g.setColor(Color.RED);
 			g.drawString("GAME OVER", 330, 250);
-			g.drawString("Your score: " + game.getScore() + "/" + game.getLevelSize(), 285, 300);
-		} else if (game.getGameState() == Orpheus.GAME_WON) {
+		} else if (state == Orpheus.GAME_WON) {
 			g.drawString("YOU WIN!", 330, 250);
-			g.drawString("Your score: " + game.getScore() + "/" + game.getLevelSize(), 285, 300);
 		}
 	}
 	
 	
 	/** Takes care of keyboard input and figures out what to do when a button is pressed. */
 	public void HandleKeys(){
+		// The profiler works in any state
+		if (controls.wasPressed(Controls.PROFILER)) {
+			profiler.toggleOverlay();
+		}
+		if (controls.wasPressed(Controls.PROFILE_DUMP)) {
+			File f = new File(System.getProperty("user.home"), ".orpheus/profile-" + System.currentTimeMillis() + ".csv");
+			if (profiler.dumpCsv(f)) {System.out.println("Frame profile written to " + f);}
+		}
+		// F5 starts measuring how far the picture is from the sound, and stops again with a report; F6 then
+		// calibrates for it, from the next level on
+		LatencyMeter meter = game.getLatencyMeter();
+		if (controls.wasPressed(Controls.LATENCY)) {
+			meter.setEnabled(!meter.isEnabled());
+			if (!meter.isEnabled()) {System.out.print(meter);}
+		}
+		if (controls.wasPressed(Controls.LATENCY_APPLY)) {
+			meter.setOffset(meter.getSuggestedOffset());
+			System.out.println("A/V offset set to " + meter.getOffset() + " ms");
+		}
+		
 		if (game.getGameState() == Orpheus.GAME_MAIN_MENU){
-			if (panel.getKey(KeyEvent.VK_ENTER) == 1 || panel.getKey(KeyEvent.VK_Z) == 1) {
+			if (controls.wasPressed(Controls.CONFIRM)) {
 				switch (menuSelection) {
 				case 0:
 					// Level Select
 					game.setGameState(Orpheus.GAME_LVL_SELECT);
 					menuSelection = 0;
+					listTop = 0;
 					break;
 				case 1:
 					// How to play
@@ -269,87 +535,125 @@ public class OrpheusGui implements TimerOwner, PanelOwner {
 					// Quit
 					game.setGameState(Orpheus.GAME_QUIT);
 					timer.stop();
+					stats.unregister();
 					System.exit(0);
 					break;
 				}
 			}
-			if (panel.getKey(KeyEvent.VK_DOWN) == 1) {
+			if (controls.wasPressed(Controls.DOWN)) {
 				// Only allow values of 0, 1, or 2
 				menuSelection = ( menuSelection + 1) % 3;
-				game.getSong().noteOn(60, 127, System.currentTimeMillis() + 50);
+				game.getEffects().play(SoundEffects.EFFECT_MENU);
 			}
-			if (panel.getKey(KeyEvent.VK_UP) == 1) {
+			if (controls.wasPressed(Controls.UP)) {
 				// Only allow values of 0, 1, or 2
 				menuSelection = ( menuSelection - 1 + 3) % 3;
-				game.getSong().noteOn(60, 127, System.currentTimeMillis() + 50);
+				game.getEffects().play(SoundEffects.EFFECT_MENU);
 			}
-			if (panel.getKey(KeyEvent.VK_ESCAPE) == 1) {
-				game.quit();
+			if (controls.wasPressed(Controls.QUIT)) {
+				// game.quit() exits, so stop everything else first
 				timer.stop();
-				System.exit(0);
+				stats.unregister();
+				game.quit();
 			}
 		} else if (game.getGameState() == Orpheus.GAME_LVL_SELECT) {
-			File[] fList = game.enumerateSongs();
+			SongInfo[] songs = game.getLibrary().getSongs();
+			// The library may have shrunk since the cursor was last moved
+			if (menuSelection >= songs.length) {menuSelection = Math.max(songs.length - 1, 0);}
 			
-			if (panel.getKey(KeyEvent.VK_DELETE) == 1 || panel.getKey(KeyEvent.VK_ESCAPE) == 1) {
+			if (controls.wasPressed(Controls.BACK)) {
 				game.setGameState(Orpheus.GAME_MAIN_MENU);
 				menuSelection = 0;
+				game.cancelSongRequest();
 				game.getSong().stop();
 			}
-			if (panel.getKey(KeyEvent.VK_ENTER) == 1 || panel.getKey(KeyEvent.VK_Z) == 1) {
-				// Select the level to play here
-				if (fList.length > menuSelection && game.loadSong(fList[menuSelection])){
-					// Successfully loaded the file
-					game.resetPlayer();
-					game.setGameState(Orpheus.GAME_PLAYING);
-					game.getSong().play();
+			if (controls.wasPressed(Controls.CONFIRM)) {
+				// Select the level to play here. It's loaded in the background (it probably already has been, see
+				// below) and cycle() starts the game once it's ready. The rest of the list plays afterwards.
+				if (songs.length > menuSelection){
+					game.getPlaylist().setSongs(game.getLibrary().getFiles());
+					game.requestSong(songs[menuSelection].getFile());
 				}
 			}
-			if (panel.getKey(KeyEvent.VK_DOWN) == 1) {
-				// Only allow values of 0, 1, or 2
-				menuSelection = ( menuSelection + 1) % 10; // Allow 0-9 possible songs
-				game.getSong().noteOn(60, 127, System.currentTimeMillis() + 50);
+			if (controls.wasPressed(Controls.DOWN) && songs.length > 0) {
+				menuSelection = (menuSelection + 1) % songs.length;
+				game.getEffects().play(SoundEffects.EFFECT_MENU);
+				// Start loading the highlighted song, so it's ready if it's picked
+				game.getPlaylist().prefetch(songs[menuSelection].getFile());
 			}
-			if (panel.getKey(KeyEvent.VK_UP) == 1) {
-				// Only allow values of 0, 1, or 2
-				menuSelection = ( menuSelection + 9) % 10;
-				game.getSong().noteOn(60, 127, System.currentTimeMillis() + 50);
+			if (controls.wasPressed(Controls.UP) && songs.length > 0) {
+				menuSelection = (menuSelection + songs.length - 1) % songs.length;
+				game.getEffects().play(SoundEffects.EFFECT_MENU);
+				game.getPlaylist().prefetch(songs[menuSelection].getFile());
 			}
+			// Scroll the list so that the selection stays on screen
+			if (menuSelection < listTop) {listTop = menuSelection;}
+			if (menuSelection >= listTop + listRows) {listTop = menuSelection - listRows + 1;}
 		} else if (game.getGameState() == Orpheus.GAME_ABOUT) {
-			if (panel.getKey(KeyEvent.VK_ENTER) == 1 || panel.getKey(KeyEvent.VK_ESCAPE) == 1 || panel.getKey(KeyEvent.VK_Z) == 1){
+			if (controls.wasPressed(Controls.CONFIRM) || controls.wasPressed(Controls.BACK)){
 				menuSelection = 0;
 				game.setGameState(game.GAME_MAIN_MENU);
 			}
 			
 		} else if (game.getGameState() == Orpheus.GAME_PLAYING) {
-			if (panel.getKey(KeyEvent.VK_Z) > 0) {
-				game.jump();
+			// Moving and jumping are done by game.cycle(), in cycle()
+			// Practising: page up and down skip through the song, insert marks the start of a loop and home goes
+			// back to it, as it was
+			long position = game.getScrollPosition();
+			if (controls.wasPressed(Controls.SEEK_BACK)) {
+				game.seek(position - seek_step);
+			}
+			if (controls.wasPressed(Controls.SEEK_FORWARD)) {
+				game.seek(Math.min(position + seek_step, game.getSong().getLength()));
+			}
+			if (controls.wasPressed(Controls.LOOP_MARK)) {
+				loopTime = position;
+				loopStates = game.getCleansed();
 			}
-			if (panel.getKey(KeyEvent.VK_LEFT) > 0) {
-				game.moveLeft();
-			} else if (panel.getKey(KeyEvent.VK_RIGHT)  > 0) {
-				game.moveRight();
+			if (controls.wasPressed(Controls.LOOP_RETURN) && loopTime >= 0) {
+				game.seek(loopTime, loopStates);
 			}
-			if (panel.getKey(KeyEvent.VK_DOWN)  > 0) {
-				game.moveDown();  
+			// Minus and equals (or plus) halve and double the speed; zero puts it back
+			if (controls.wasPressed(Controls.TIME_SLOWER)) {
+				game.setTimeScale(game.getTimeScale() / 2);
 			}
-			if (panel.getKey(KeyEvent.VK_DELETE) == 1 || panel.getKey(KeyEvent.VK_ESCAPE) == 1) {
+			if (controls.wasPressed(Controls.TIME_FASTER)) {
+				game.setTimeScale(game.getTimeScale() * 2);
+			}
+			if (controls.wasPressed(Controls.TIME_NORMAL)) {
+				game.setTimeScale(1);
+			}
+			if (controls.wasPressed(Controls.BACK)) {
 				game.setGameState(Orpheus.GAME_MAIN_MENU);
 				menuSelection = 0;
 				game.getSong().stop();
 			}
 		} else if (game.getGameState() == Orpheus.GAME_OVER) {
-			if (panel.getKey(KeyEvent.VK_ENTER) == 1 || panel.getKey(KeyEvent.VK_Z) == 1) {
+			if (controls.wasPressed(Controls.CONFIRM)) {
 				game.setGameState(Orpheus.GAME_MAIN_MENU);
 				menuSelection = 0;
 			}
 		} else if (game.getGameState() == Orpheus.GAME_WON) {
-			if (panel.getKey(KeyEvent.VK_ENTER) == 1 || panel.getKey(KeyEvent.VK_Z) == 1) {
+			if (controls.wasPressed(Controls.CONFIRM)) {
+				// On to the next song in the playlist, which has been loading since this one started
+				File next = game.getPlaylist().getNext();
+				if (next != null) {
+					game.requestSong(next);
+				} else {
+					game.setGameState(Orpheus.GAME_MAIN_MENU);
+					menuSelection = 0;
+				}
+			}
+			if (controls.wasPressed(Controls.BACK)) {
+				game.cancelSongRequest();
 				game.setGameState(Orpheus.GAME_MAIN_MENU);
 				menuSelection = 0;
 			}
 		}
 		
-		panel.updateKeys();
+		// The speed carries on from song to song (e.g. fast-forwarding through a playlist), but not to the menus
+		if (game.getGameState() == Orpheus.GAME_MAIN_MENU && game.getTimeScale() != 1) {
+			game.setTimeScale(1);
+		}
 	}
 }
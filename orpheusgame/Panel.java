@@ -15,8 +15,8 @@ public class Panel extends JPanel implements KeyListener {
 	private static final long serialVersionUID = 1L;
 	/** The owner of this content Panel. Is the target of callbacks. */
 	private PanelOwner parent;
-	/** An integer array that keeps track of the state of the keyboard. */
-	private int[] keys;
+	/** Key presses and releases, on their way to the game thread (see Controls). */
+	private InputQueue input;
 	
 	/** Defaults to a 600x600 screen. */
 	public Panel(PanelOwner parent){
@@ -34,46 +34,26 @@ public class Panel extends JPanel implements KeyListener {
 		setFocusTraversalKeysEnabled(false);
 		setIgnoreRepaint(true); // Tell the AWT to ignore us, b/c WE'LL repaint ourselves
 		addKeyListener(this);
-		keys = new int[256];
+		input = new InputQueue(256);
 		requestFocusInWindow();
 	}
 	
 	
-	/** This will be called by Java's AWT whenever a repaint() is called. */
+	/** This will be called by Java's AWT whenever a repaint() is called. The owner paints every pixel inside
+	 *  the clip, so there's no filling in the background first (which would be a full-panel fill every frame). */
 	public void paintComponent(Graphics g){
-		super.paintComponent(g);
 		parent.drawGame(g);
 		g.dispose();
 	}
 	
-	/** Updates the keys[] array. This allows the panel to keep track of the length
-	 *  of time that a key has been held down. */
-	public void updateKeys(){
-		for (int i = 0; i < keys.length; i++){
-			if (keys[i] != 0) {keys[i]++;}
-		}
-		
-	}
-	
-	/** Sets respective elements of keys[] array. If the key is held down, this is checked
-	 *  for in handleKeys(). */
+	/** Passes the key press on to the game thread, with the time it happened. */
 	public void keyPressed(KeyEvent arg0) {
-				
-		int index = arg0.getKeyCode();
-		if (index > 255) {return;} // Don't want to go out of bounds of array
-		
-		// If the key had been up, then set it down
-		// If the keys[index] isn't zero, then it was down last
-		// cycle
-		if (keys[index]==0) {keys[index] = 1;} 
+		input.offer(arg0.getKeyCode(), true, System.nanoTime());
 	}
 
-	/** Resets respective elements of keys[] array. */
+	/** Passes the key release on to the game thread, with the time it happened. */
 	public void keyReleased(KeyEvent arg0) {
-		int index = arg0.getKeyCode();
-		if (index > 255) {return;} // Don't want to go out of bounds of array
-		
-		keys[index] = 0; // Reset the key
+		input.offer(arg0.getKeyCode(), false, System.nanoTime());
 	}
 
 	/** Unused in Panel, but required by interface. */
@@ -81,12 +61,10 @@ public class Panel extends JPanel implements KeyListener {
 	}
 	
 	//=================/ Getters & Setters /==============================/
-	/** Gets the current state of a keyboard key (use KeyEvent.VK_XXXX for index). A state 
-	 *  of 0 indicates a key that is up, while a state of 1 or greater indicates 
-	 *  a key that has been down for that many cycles. */
-	public int getKey(int index){
-		if (index >= 0 && index < 256){ return keys[index];}
-		return 0;
+	/** Returns the queue key events are put in. The game thread should hand it to Controls.update() once a
+	 *  tick. */
+	public InputQueue getInputQueue(){
+		return input;
 	}
 
 }
@@ -0,0 +1,36 @@
+package orpheusgame;
+
+import java.awt.Graphics;
+import java.util.ArrayList;
+
+/** The scrolling part of the background: a stack of ParallaxLayers, drawn back to front. */
+public class ParallaxBackground {
+
+	private ArrayList<ParallaxLayer> layers = new ArrayList<ParallaxLayer>();
+
+	/** Adds a layer in front of the ones already added. */
+	public void addLayer(ParallaxLayer layer){
+		layers.add(layer);
+	}
+
+	/** Scrolls every layer by 'delta' ms worth of movement at the given platform speed (pixels per second). */
+	public void update(long delta, float platformSpeed){
+		for (int i = 0; i < layers.size(); i++){
+			layers.get(i).update(delta, platformSpeed);
+		}
+	}
+
+	/** Draws every layer, back to front. */
+	public void draw(Graphics g){
+		for (int i = 0; i < layers.size(); i++){
+			layers.get(i).draw(g);
+		}
+	}
+
+	/** Marks the rows covered by the layers, so the compositor erases them next frame. */
+	public void mark(Compositor compositor, int screenWidth){
+		for (int i = 0; i < layers.size(); i++){
+			compositor.mark(0, layers.get(i).getY(), screenWidth, layers.get(i).getHeight());
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package orpheusgame;
+
+import java.awt.Graphics;
+import java.util.Random;
+
+/** One row of background tiles that scrolls from right to left. Layers further away scroll slower, which
+ *  gives the background some depth. The speed is a fraction of the platforms' speed, and the position is
+ *  worked out from the time that has passed, so it scrolls at the same rate whatever the frame rate.
+ *  The tiles on screen are kept in a ring: when the leftmost one scrolls off, its slot becomes the rightmost
+ *  one, with a new image picked at random. All of that happens in update(); draw() changes nothing. */
+public class ParallaxLayer {
+
+	/** The images to pick tiles from. They should all be 'tileWidth' wide. */
+	private Sprite[] sprites;
+	private int tileWidth, tileHeight;
+	/** The y coordinate of the top of the row. */
+	private int y;
+	/** How fast this layer moves, as a fraction of the platform speed. */
+	private float depth;
+
+	/** Which image each tile uses, in a ring starting at 'head' (the leftmost tile). */
+	private int[] ring;
+	private int head;
+	/** How far (in pixels) the leftmost tile has scrolled off the left of the screen, from 0 up to tileWidth. */
+	private float offset;
+
+	private Random RNG = new Random();
+
+	/** Makes a row of tiles covering a screen of the given width. */
+	public ParallaxLayer(Sprite[] sprites, int y, float depth, int screenWidth){
+		this.sprites = sprites;
+		this.y = y;
+		this.depth = depth;
+		tileWidth = sprites[0].getWidth();
+		tileHeight = sprites[0].getHeight();
+		// Enough to cover the screen, plus one sliding in from the right
+		ring = new int[screenWidth / tileWidth + 2];
+		for (int i = 0; i < ring.length; i++){
+			ring[i] = RNG.nextInt(sprites.length);
+		}
+	}
+
+	/** Scrolls the layer by 'delta' ms worth of movement at the given platform speed (pixels per second). */
+	public void update(long delta, float platformSpeed){
+		offset += platformSpeed * depth * (delta / 1000.0f);
+		while (offset >= tileWidth) {
+			// The leftmost tile is gone: reuse its slot on the right, with a new image
+			offset -= tileWidth;
+			ring[head] = RNG.nextInt(sprites.length);
+			head = (head + 1) % ring.length;
+		}
+	}
+
+	/** Draws the layer. */
+	public void draw(Graphics g){
+		// Read these once; update() may run while we're drawing
+		int h = head;
+		int x = -(int) offset;
+		for (int i = 0; i < ring.length; i++){
+			sprites[ring[(h + i) % ring.length]].draw(g, x + i*tileWidth, y);
+		}
+	}
+
+	/** Returns the y coordinate of the top of the layer. */
+	public int getY(){
+		return y;
+	}
+
+	/** Returns the height of the layer, in pixels. */
+	public int getHeight(){
+		return tileHeight;
+	}
+}
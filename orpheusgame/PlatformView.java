@@ -2,42 +2,121 @@ package orpheusgame;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class PlatformView {
-	
+
+	/** The most platform images kept at once. Platform widths come from note lengths, so a song only has a
+	 *  handful of different ones; this is plenty for any song, and at most a few MB. */
+	public static final int max_cached = 256;
+
 	private Sprite sDirty;
 	private Sprite sClean;
-	
+
+	// Finished platforms (body and shadow), by size and state. In access order, so the first entry is the one
+	// that was drawn longest ago, and that's the one thrown away when the cache is full.
+	private LinkedHashMap<Long, BufferedImage> cache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+			if (size() > max_cached) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	// How often the cache had the platform ready, how often it had to make one, and how many it threw away
+	private long hits, misses, evictions;
+
 	public PlatformView() {
 		// Get the sprite associated with the player character (will create image if not loaded yet)
 		sDirty = SpriteManager.get().getSprite("resources/sprites/platform1.bmp");
 		sClean = SpriteManager.get().getSprite("resources/sprites/platform_gold.bmp");
 	}
-	
-	/** Draws the platform at the given coordinates */
+
+	/** Draws the platform at the given coordinates. The shadow sticks up 4 pixels above 'y'. */
 	public void drawPlatform(Graphics g, int x, int y, int width, int height, int platformState) {
+		if (width <= 0 || height <= 0) {return;}
+		if (platformState != Platform.platform_cleansed && platformState != Platform.platform_polluted) {return;}
+
+		Long key = Long.valueOf(((long) width << 32) | ((long) height << 8) | platformState);
+		BufferedImage img = cache.get(key);
+		if (img == null) {
+			misses++;
+			img = render(width, height, platformState);
+			cache.put(key, img);
+		} else {
+			hits++;
+		}
+		g.drawImage(img, x, y - 4, null);
+	}
+
+	/** Draws a platform (and its shadow) into an image of its own. The platform's top edge is 4 pixels down. */
+	private BufferedImage render(int width, int height, int platformState) {
+		BufferedImage img = SpriteManager.createCompatibleImage(width, height + 4, Transparency.BITMASK);
+		Graphics2D g = img.createGraphics();
+
 		int[] xcoords = new int[4];
 		int[] ycoords = new int[4];
-		xcoords[0] = x;
-		ycoords[0] = y;
-		xcoords[1] = x+width;
-		ycoords[1] = y;
-		xcoords[2] = x + (int) (0.8 * width);
-		ycoords[2] = y - 4;
-		xcoords[3] = x + (int) (0.2 * width);
-		ycoords[3] = y - 4;
-		
+		xcoords[0] = 0;
+		ycoords[0] = 4;
+		xcoords[1] = width;
+		ycoords[1] = 4;
+		xcoords[2] = (int) (0.8 * width);
+		ycoords[2] = 0;
+		xcoords[3] = (int) (0.2 * width);
+		ycoords[3] = 0;
+
 		if (platformState == Platform.platform_cleansed) {
-			sClean.drawPart(g, x, y, 0, 0, width, height, false);
+			sClean.drawPart(g, 0, 4, 0, 0, width, height, false);
 			// They need a shadow
 			g.setColor(OrpheusGui.cGold);
-			g.fillPolygon(xcoords, ycoords, 4);		
+			g.fillPolygon(xcoords, ycoords, 4);
 		} else if (platformState == Platform.platform_polluted) {
-			sDirty.drawPart(g, x, y, 0, 0, width, height, false);
+			sDirty.drawPart(g, 0, 4, 0, 0, width, height, false);
 			g.setColor(Color.gray);
 			g.fillPolygon(xcoords, ycoords, 4);
 		}
-		
+		g.dispose();
+		return img;
+	}
+
+	/** Throws away every cached platform image (the statistics are kept). */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	//=================/ Cache Statistics /==============================/
+	/** Returns how many platforms were drawn from an image already in the cache. */
+	public long getCacheHits() {
+		return hits;
+	}
+
+	/** Returns how many platforms had to be drawn into a new image first. */
+	public long getCacheMisses() {
+		return misses;
+	}
+
+	/** Returns how many images were thrown out of the cache to make room. */
+	public long getCacheEvictions() {
+		return evictions;
+	}
+
+	/** Returns the number of images in the cache. */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		long total = hits + misses;
+		return "PlatformView cache: " + cache.size() + "/" + max_cached + " images, " + hits + " hits, " + misses + " misses (" +
+				(total == 0 ? 0 : 100 * hits / total) + "% hits), " + evictions + " evictions";
 	}
 
 }
@@ -1,66 +1,53 @@
 package orpheusgame;
 
-import java.awt.Color;
 import java.awt.Graphics;
 
-/** Takes care of displaying the graphical elements of the main character of the game Orpheus. */
+/** Takes care of displaying the graphical elements of the main character of the game Orpheus.
+ *  The frames and animations come from resources/sprites/Orpheus.anim (see AnimationSet); this class only
+ *  decides which animation fits what the player is doing. */
 public class PlayerView {
 
-	private Sprite sprite;
-	// Our internal counter for time. Used for animations.
+	private AnimationSet anims;
+	// The animation being played, and how long (in ms) it's been playing
+	private Animation current;
 	private long timer;
-	
+	// Whether the player is facing left, i.e. we draw the mirrored frames
+	private boolean flipped;
+
 	public PlayerView() {
-		// Get the sprite associated with the player character (will create image if not loaded yet)
-		sprite = SpriteManager.get().getSprite("resources/sprites/Orpheus 24x24.bmp");
-		// Now make the color magenta transparent on this image
-		sprite.setImage(SpriteManager.get().makeColorTransparent(sprite.getImage(), Color.magenta));
+		// Cuts the sheet into frames, with magenta made transparent, facing both ways
+		anims = new AnimationSet("resources/sprites/Orpheus.anim");
+		current = anims.getAnimation("stand");
 		timer = 0;
 	}
-	
+
 	/** Draws the player, with the given coordinates describing the top left corner of the bounding box. */
-	public void drawPlayer(Graphics g, int x, int y, int playerState, float vx, float vy) {
+	public void drawPlayer(Graphics g, int x, int y) {
+		anims.getFrame(current.getFrameAt(timer), flipped).draw(g, x, y);
+	}
+
+	/** Synchs the PlayerView object. This should be called every cycle, after the player's input has been
+	 *  handled, with the player's state and velocity. It picks the animation and advances it by 'delta' ms. */
+	public void update(long delta, int playerState, float vx, float vy){
 		// Draw the images flipped if the player is travelling left
-		boolean flipped = false;
-		if (vx < 0) {flipped = true;}
-		
-		if (playerState == Orpheus.PLAYER_STANDING) {
-			if (vx != 0) {
-				// Walking animation;
-				if (timer < 200 ){
-					sprite.drawPart(g, x, y, 24, 0, 24, 24, flipped);
-				} else {
-					sprite.drawPart(g, x, y, 0, 0, 24, 24, flipped);
-					timer = 0; // Reset animation sequence
-				}
-			} else {
-				// Standing still
-				sprite.drawPart(g, x, y, 0, 0, 24, 24, flipped);
-				timer = 0;
-			}
-		} else if (playerState == Orpheus.PLAYER_FALLING) {
-			// Cycle between falling animations
+		flipped = (vx < 0);
+
+		String name;
+		if (playerState == Orpheus.PLAYER_FALLING) {
 			// Velocity positive when FALLING DOWN!
-			if (vy <= 0) {
-				// Jumping or reached apex of jump
-				sprite.drawPart(g, x, y, 2*24, 0, 24, 24, flipped);
-			} else {
-				// Actually falling towards bottom of screen
-				if (timer < 100) {
-					sprite.drawPart(g, x, y, 3*24, 0, 24, 24, flipped);
-				} else {
-					sprite.drawPart(g, x, y, 4*24, 0, 24, 24, flipped);
-					timer = 0; // Reset falling animation
-				}
-			}
+			name = (vy <= 0) ? "jump" : "fall";
+		} else {
+			name = (vx != 0) ? "walk" : "stand";
+		}
+
+		Animation next = anims.getAnimation(name);
+		if (next != current) {
+			// Start the new animation from its first frame
+			current = next;
+			timer = 0;
+		} else {
+			timer += delta;
 		}
-		
-	}
-	
-	/** Synchs the PlayerView object. This should be called every cycle. It allows the PlayerView to know when to animate and how long to
-	 * delay between each frame. */
-	public void update(long delta){
-		timer += delta;
 	}
-	
+
 }
@@ -0,0 +1,109 @@
+package orpheusgame;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** An ordered list of songs, played one after another. Songs are loaded on a background thread ahead of time
+ *  (see prefetch()), so that by the time the game wants one it's already parsed, built into platforms and
+ *  ready to go. Only one song is kept staged at a time: asking for a different one drops the previous one. */
+public class Playlist {
+
+	/** The game, which knows how to turn a midi file into a level. */
+	private Orpheus game;
+	/** The songs in the playlist, in order. */
+	private File[] songs = new File[0];
+	/** The index of the song being played, or -1. */
+	private int current = -1;
+
+	/** Loads songs in the background. A single thread is plenty, and keeps loading from competing with the game. */
+	private ExecutorService loader;
+	/** The song being (or already) staged, and its result. */
+	private File stagedFile;
+	private Future<StagedLevel> staged;
+
+	public Playlist(Orpheus game){
+		this.game = game;
+		loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Playlist loader");
+				t.setDaemon(true);
+				// Loading can wait; the game loop can't
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	/** Sets the songs in the playlist. */
+	public synchronized void setSongs(File[] songs){
+		this.songs = songs;
+		current = indexOf(songs, getCurrent());
+	}
+
+	/** Returns the song being played, or null. */
+	public synchronized File getCurrent(){
+		return (current < 0 || current >= songs.length) ? null : songs[current];
+	}
+
+	/** Marks the given song as the one being played. */
+	public synchronized void setCurrent(File f){
+		current = indexOf(songs, f);
+	}
+
+	/** Returns the song after the current one, or null if the current one is the last. */
+	public synchronized File getNext(){
+		return (current < 0 || current + 1 >= songs.length) ? null : songs[current + 1];
+	}
+
+	/** Starts loading the given song in the background, unless it's already been started. */
+	public synchronized void prefetch(final File f){
+		if (f == null || f.equals(stagedFile)) {return;}
+		if (staged != null) {staged.cancel(false);}
+
+		stagedFile = f;
+		staged = loader.submit(new Callable<StagedLevel>() {
+			public StagedLevel call() {
+				return game.stageLevel(f);
+			}
+		});
+	}
+
+	/** Returns true when the given song has finished loading (successfully or not). Starts loading it if need be. */
+	public synchronized boolean isReady(File f){
+		prefetch(f);
+		return staged.isDone();
+	}
+
+	/** Hands over the staged level for the given song, or null if it failed to load (or isn't ready yet -- check
+	 *  isReady() first). */
+	public synchronized StagedLevel take(File f){
+		if (!f.equals(stagedFile) || !staged.isDone()) {return null;}
+
+		StagedLevel result = null;
+		try {result = staged.get();}
+		catch (InterruptedException e) {e.printStackTrace();}
+		catch (ExecutionException e) {e.printStackTrace();}
+		stagedFile = null;
+		staged = null;
+		return result;
+	}
+
+	/** Stops the loading thread. */
+	public void shutdown(){
+		loader.shutdownNow();
+	}
+
+	/** Returns the index of 'f' in 'list', or -1. */
+	private static int indexOf(File[] list, File f){
+		if (f == null) {return -1;}
+		for (int i = 0; i < list.length; i++){
+			if (f.equals(list[i])) {return i;}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,140 @@
+package orpheusgame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** A color filter which works directly on the pixel array of an ARGB BufferedImage, a block of rows at a time,
+ *  with the rows split across every core. This replaces RGBImageFilter, which makes one call per pixel through
+ *  the producer/consumer pipeline and runs on a single thread.
+ *  Every filter here only looks at one pixel at a time, so any split of the rows gives the same result. */
+public abstract class RasterFilter {
+
+	/** Don't bother splitting the work into pieces smaller than this many pixels. */
+	private static final int min_pixels = 16384;
+
+	/** Filters pixels[from] up to (not including) pixels[to], in place. Pixels are ARGB ints. */
+	protected abstract void filter(int[] pixels, int from, int to);
+
+	/** Filters an image in place. The image must be of TYPE_INT_ARGB (see toARGB()). */
+	public void apply(BufferedImage img){
+		if (img.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("RasterFilter needs a TYPE_INT_ARGB image");
+		}
+		int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		int w = img.getWidth();
+		int h = img.getHeight();
+
+		if (w * h <= min_pixels) {
+			filter(pixels, 0, w * h);
+		} else {
+			// Whole rows per task, so no two threads ever touch the same row
+			int rowsPerTask = Math.max(1, min_pixels / w);
+			ForkJoinPool.commonPool().invoke(new Rows(pixels, w, 0, h, rowsPerTask));
+		}
+	}
+
+	/** Copies any image into a new TYPE_INT_ARGB BufferedImage, ready to be filtered. */
+	public static BufferedImage toARGB(Image im){
+		BufferedImage argb = new BufferedImage(im.getWidth(null), im.getHeight(null), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = argb.createGraphics();
+		g2d.drawImage(im, 0, 0, null);
+		g2d.dispose();
+		return argb;
+	}
+
+	/** Splits a range of rows in half until it's small enough, then filters it. */
+	private class Rows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] pixels;
+		private final int width, firstRow, endRow, rowsPerTask;
+
+		Rows(int[] pixels, int width, int firstRow, int endRow, int rowsPerTask){
+			this.pixels = pixels;
+			this.width = width;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.rowsPerTask = rowsPerTask;
+		}
+
+		protected void compute(){
+			if (endRow - firstRow <= rowsPerTask) {
+				filter(pixels, firstRow * width, endRow * width);
+				return;
+			}
+			int mid = (firstRow + endRow) >>> 1;
+			invokeAll(new Rows(pixels, width, firstRow, mid, rowsPerTask), new Rows(pixels, width, mid, endRow, rowsPerTask));
+		}
+	}
+
+	//====================/ Filters /===================/
+
+	/** Shifts the image towards a color: each channel is scaled by 1 + (c - 128) / 128, so middle gray leaves the
+	 *  image alone, brighter colors brighten it and darker ones darken it (see SpriteManager.mutateRGB). */
+	public static RasterFilter tint(Color color){
+		// Fixed point, 8 bits of fraction, so the inner loop stays in integers
+		final int rFactor = 256 + (color.getRed() - 128) * 2;
+		final int gFactor = 256 + (color.getGreen() - 128) * 2;
+		final int bFactor = 256 + (color.getBlue() - 128) * 2;
+		return new RasterFilter() {
+			protected void filter(int[] pixels, int from, int to){
+				for (int i = from; i < to; i++){
+					int rgb = pixels[i];
+					int r = Math.min(255, (((rgb >> 16) & 0xff) * rFactor) >> 8);
+					int g = Math.min(255, (((rgb >> 8) & 0xff) * gFactor) >> 8);
+					int b = Math.min(255, ((rgb & 0xff) * bFactor) >> 8);
+					pixels[i] = (rgb & 0xff000000) | (r << 16) | (g << 8) | b;
+				}
+			}
+		};
+	}
+
+	/** Makes every pixel of the given color (ignoring alpha) fully transparent. */
+	public static RasterFilter colorKey(Color color){
+		final int marker = color.getRGB() | 0xFF000000;
+		return new RasterFilter() {
+			protected void filter(int[] pixels, int from, int to){
+				for (int i = from; i < to; i++){
+					if ((pixels[i] | 0xFF000000) == marker) {pixels[i] &= 0x00FFFFFF;}
+				}
+			}
+		};
+	}
+
+	/** Scales the brightness of every pixel; 1 leaves the image alone, 0 makes it black. */
+	public static RasterFilter brightness(float factor){
+		final int f = Math.max(0, (int) (factor * 256));
+		return new RasterFilter() {
+			protected void filter(int[] pixels, int from, int to){
+				for (int i = from; i < to; i++){
+					int rgb = pixels[i];
+					int r = Math.min(255, (((rgb >> 16) & 0xff) * f) >> 8);
+					int g = Math.min(255, (((rgb >> 8) & 0xff) * f) >> 8);
+					int b = Math.min(255, ((rgb & 0xff) * f) >> 8);
+					pixels[i] = (rgb & 0xff000000) | (r << 16) | (g << 8) | b;
+				}
+			}
+		};
+	}
+
+	/** Recolors the image from a 256-color palette, by brightness: a pixel of brightness L becomes
+	 *  palette[(L + shift) & 255]. Changing 'shift' from frame to frame cycles the colors, old-school style. The
+	 *  alpha of each pixel is kept. */
+	public static RasterFilter paletteShift(final int[] palette, final int shift){
+		if (palette.length != 256) {throw new IllegalArgumentException("The palette must have 256 colors");}
+		return new RasterFilter() {
+			protected void filter(int[] pixels, int from, int to){
+				for (int i = from; i < to; i++){
+					int rgb = pixels[i];
+					// Integer approximation of 0.299 R + 0.587 G + 0.114 B
+					int luma = (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + (rgb & 0xff) * 29) >> 8;
+					pixels[i] = (rgb & 0xff000000) | (palette[(luma + shift) & 0xff] & 0x00FFFFFF);
+				}
+			}
+		};
+	}
+}
@@ -11,24 +11,37 @@ public class Song implements Receiver {
 
 	/** The midi file from where the song is loaded. */
 	private File source;
-	/** The sequence of midi events from the source file. A sequence consists of many tracks. */
+	/** The sequence of midi events from the source file. A sequence consists of many tracks. This is only
+	 *  needed by the sequencer, so it isn't created until the song is played (or getTracks() is called). */
 	private Sequence sequence;
 	/** The tracks stored in the sequence. */
 	private Track[] tracks;
+	/** The channel messages of the source file, in flat arrays. This is what levels are built from. */
+	private MidiData data;
 	
 	/** Is true when the song has finished playing. */
 	private boolean isOver;
 	
-	/** An array of every note, holding the time when that note should be turned off. */
-	private long[] notes = new long[128];
-	/** All the channels available from the synthesizer. We generally only use the first one (i.e. channels[0])*/
+	/** The most notes the game itself (not the sequencer) may have sounding at once. */
+	public static final int max_voices = 24;
+	/** Keeps track of the notes we've turned on, on every channel, and turns them off again. */
+	private VoiceManager voices;
+	/** All the channels available from the synthesizer. Channel 0 is used unless another one is asked for. */
 	private MidiChannel[] channels;
+	/** The instrument (program number) set on each channel with setChannelInstrument(). */
+	private int[] instruments = new int[16];
 	/** The bank of all instruments available. */
 	private Instrument[] soundbank;
 	
 	/** The system's current MIDI sequencer and synthesizer objects. */
 	private Sequencer sequencer;
 	private Synthesizer synthesizer;
+	/** How fast the sequencer plays, as a multiple of the song's own tempo (see setTempoFactor()). */
+	private float tempoFactor = 1;
+	/** When true, neither the sequencer nor the game's own notes make a sound. */
+	private boolean muted;
+	/** Told about every NoteOn the sequencer sends, while it's measuring. May be null. */
+	private LatencyMeter latency;
 	
 	public Song(){
 		// Nothing to do here yet.
@@ -107,6 +120,7 @@ public class Song implements Receiver {
 			synthesizer = MidiSystem.getSynthesizer();
 			synthesizer.open();
 			channels = synthesizer.getChannels();
+			voices = new VoiceManager(channels, max_voices, VoiceManager.STEAL_OLDEST);
 			soundbank = synthesizer.getDefaultSoundbank().getInstruments();
 			synthesizer.loadInstrument(soundbank[1]);
 			//channels[0].programChange(24);
@@ -119,8 +133,46 @@ public class Song implements Receiver {
 		return true;
 	}
 	
+	/** Plays the game's own notes on the given channels, instead of the synthesizer's. Without loadDevices(),
+	 *  this is the only way to get noteOn() and friends to do anything. */
+	public void setChannels(MidiChannel[] channels){
+		this.channels = channels;
+		voices = new VoiceManager(channels, max_voices, VoiceManager.STEAL_OLDEST);
+	}
+	
+	/** Reads the midi file into memory (see MidiData). Returns true upon success, false otherwise. */
 	public boolean loadData(File source){
 		this.source = source;
+		sequence = null;
+		tracks = null;
+		
+		try {
+			data = MidiData.read(source);
+		} catch (InvalidMidiDataException e) {
+			e.printStackTrace();
+			return false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;			
+		}
+		
+		// If everything went okay, return true;
+		return true;
+	}
+	
+	/** Switches the song over to data which has already been loaded, e.g. by a Playlist. The Sequence may be
+	 *  null, in which case it's created when the song is played. */
+	public void setData(File source, MidiData data, Sequence sequence){
+		this.source = source;
+		this.data = data;
+		this.sequence = sequence;
+		tracks = (sequence == null) ? null : sequence.getTracks();
+	}
+	
+	/** Creates the javax Sequence for the loaded file, if that hasn't been done yet. */
+	private boolean loadSequence(){
+		if (sequence != null) {return true;}
+		if (source == null) {return false;}
 		
 		try {
 			sequence = MidiSystem.getSequence(source);
@@ -133,23 +185,30 @@ public class Song implements Receiver {
 		}
 		
 		tracks = sequence.getTracks();
-		// If everything went okay, return true;
 		return true;
 	}
 	
-	/** Returns the array of tracks in the loaded sequence. Will be null if no sequence loaded, or upon error. */
+	/** Returns the array of tracks in the loaded sequence. Will be null if no sequence loaded, or upon error. 
+	 *  Prefer getData(), which doesn't need to build a Sequence. */
 	public Track[] getTracks(){
+		loadSequence();
 		return tracks;
 	}
 	
+	/** Returns the loaded song's events as flat arrays of tick, status and data bytes. Will be null if no song
+	 *  is loaded. */
+	public MidiData getData(){
+		return data;
+	}
+	
 	/** Returns the length of the song, in milliseconds. */
 	public long getLength(){
-		return (sequence.getMicrosecondLength() / 1000);
+		return (data.getMicrosecondLength() / 1000);
 	}
 	
 	/** Returns milliseconds per tick for this sequence. */
 	public float getTempo(){
-		return (getLength() * 1.0f / sequence.getTickLength());
+		return data.getTempo();
 	}
 	
 	/** Returns the source midi file of the song. */
@@ -164,10 +223,20 @@ public class Song implements Receiver {
 	/** Ever message that goes through Song will also be sent through here, by virtue of the fact that we've
 	 * linked it up that way in the loadDevices() method. */
 	public void send(MidiMessage msg, long timeStamp) {
-		// The status byte of a midi message; 
-		// msg.getStatus();
-		// MidiMessage data comes in signed bytes! We gotta convert it to integer so Java can use it...
-		int iData = (int) (msg.getMessage()[1] & 0xFF);
+		// The time first, so nothing below counts towards it
+		long now = System.nanoTime();
+		// Only channel messages have notes in them. (getMessage() would copy the bytes, every message.)
+		if (!(msg instanceof ShortMessage)) {return;}
+		ShortMessage sm = (ShortMessage) msg;
+		// 144 = NoteOn; with no velocity it's really a NoteOff
+		if (sm.getCommand() == 144 && sm.getData2() != 0 && latency != null) {
+			latency.audioNote(sm.getData1(), now);
+		}
+	}
+	
+	/** Sets the meter to tell about the sequencer's NoteOns (see LatencyMeter). */
+	public void setLatencyMeter(LatencyMeter latency){
+		this.latency = latency;
 	}
 	
 	/** Plays the loaded sequence. MIDI events will trickle through the send() method. */
@@ -180,51 +249,141 @@ public class Song implements Receiver {
 			return false;	
 		}
 		
+		if (!loadSequence()) {return false;}
+		
 		try {sequencer.setSequence(sequence);}
 		catch (InvalidMidiDataException e) {
 			e.printStackTrace();
 			return false;
 		}
 		
+		applyPlayback();
 		sequencer.start();
 		isOver = false;
 		return true;
 	}
 	
-	/** Halts playback of the currently playing song. Does this reset song to beginning???*/
+	/** Plays the song faster (above 1) or slower (below 1) than its own tempo, e.g. to keep up with the game
+	 *  when it's in slow motion. This lasts until it's changed again, whatever song is played. */
+	public void setTempoFactor(float factor){
+		tempoFactor = factor;
+		applyPlayback();
+	}
+	
+	/** Silences the song and the game's notes, or lets them be heard again. */
+	public void setMuted(boolean muted){
+		this.muted = muted;
+		if (muted && voices != null) {voices.releaseAll();}
+		applyPlayback();
+	}
+	
+	/** Sets the tempo factor and muting on the sequencer. A new sequence loses its track mutes, so play() calls
+	 *  this again. */
+	private void applyPlayback(){
+		if (sequencer == null || !sequencer.isOpen()) {return;}
+		sequencer.setTempoFactor(tempoFactor);
+		if (sequencer.getSequence() == null) {return;}
+		int trackCount = sequencer.getSequence().getTracks().length;
+		for (int i = 0; i < trackCount; i++){
+			sequencer.setTrackMute(i, muted);
+		}
+	}
+	
+	/** Halts playback of the currently playing song, and silences any notes the game has turned on.
+	 *  Does this reset song to beginning???*/
 	public void stop(){
+		if (voices != null) {voices.releaseAll();}
 		if (sequencer == null) {return;}
 		if (!sequencer.isOpen()){return;}
 		sequencer.stop();
 	}
 	
-	/** Sends a NoteOn message directly to the MIDI channel. This has the effect of immediately playing the sound. */
+	/** Moves the sequencer to the given time (in ms), and silences the game's own notes. The time is turned into
+	 *  ticks the same way the platforms were (see getTempo()), so the two stay lined up. */
+	public void seek(long ms){
+		if (voices != null) {voices.releaseAll();}
+		if (sequencer == null || !sequencer.isOpen() || data == null) {return;}
+		sequencer.setTickPosition((long) (ms / data.getTempo()));
+	}
+	
+	/** Sends a NoteOn message directly to the first MIDI channel. This has the effect of immediately playing the sound. 
+	 *  The note is turned off by updateNotes() once the time 'toff' (in ms) has passed; if 'toff' is 0 the note
+	 *  stays on until noteOff() is called. */
 	public void noteOn(int noteNumber, int velocity, long toff){
-		channels[0].noteOn(noteNumber, velocity);
-		notes[noteNumber] = toff; //The time when the note needs to end
+		noteOn(0, noteNumber, velocity, toff);
+	}
+	
+	/** Sends a NoteOn message directly to the given MIDI channel. If too many notes are already playing, the
+	 *  oldest one is cut off. */
+	public void noteOn(int channel, int noteNumber, int velocity, long toff){
+		if (voices == null || muted) {return;} // No devices (or no sound wanted); nothing to play on
+		AudioCommandEvent event = new AudioCommandEvent();
+		event.begin();
+		voices.noteOn(channel, noteNumber, velocity, toff);
+		event.end();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.note = noteNumber;
+			event.velocity = velocity;
+			event.activeNotes = voices.getActiveCount();
+			event.commit();
+		}
 	}
 	
-	/** Sends a NoteOff message directly to the MIDI channel. If the note was playing, it should now be off. */
+	/** Sends a NoteOff message directly to the first MIDI channel. If the note was playing, it should now be off. */
 	public void noteOff(int noteNumber, int velocity){
-		channels[0].noteOff(noteNumber, velocity);
-		notes[noteNumber] = 0;
+		noteOff(0, noteNumber, velocity);
+	}
+	
+	/** Sends a NoteOff message directly to the given MIDI channel. */
+	public void noteOff(int channel, int noteNumber, int velocity){
+		if (voices == null) {return;}
+		voices.noteOff(channel, noteNumber, velocity);
 	}
 	
 	/** This updates all currently playing notes and turns them off properly. 
 	 * @param 'time' refers to the CURRENT TIME*/
 	public void updateNotes(long time){
-		for (int i = 0; i < notes.length; i++){
-			if ((notes[i] <= time) && (notes[i] != 0)) {noteOff(i, 127);}
-		}
+		if (voices == null) {return;}
+		voices.update(time);
+	}
+	
+	/** Returns the number of notes the game has sounding right now (not counting the sequencer's). */
+	public int getActiveNotes(){
+		return voices == null ? 0 : voices.getActiveCount();
+	}
+	
+	/** Returns the number of the game's notes that have a time to be turned off, and haven't reached it yet. */
+	public int getPendingNoteOffs(){
+		return voices == null ? 0 : voices.getPendingCount();
 	}
-
-	// TODO Include support for multiple channels, because a single MIDI channel generally can only have one MIDI instrument loaded. That would be boring!!!
 	
-	/** Induces a program change in the chosen channel. */
+	/** Returns how far into the song the sequencer is, in ms, or -1 if it isn't playing. */
+	public long getPosition(){
+		if (sequencer == null || !sequencer.isRunning()) {return -1;}
+		return sequencer.getMicrosecondPosition() / 1000;
+	}
+	
+	/** Sets whether to cut off the oldest or the quietest note when too many are playing
+	 *  (VoiceManager.STEAL_OLDEST or VoiceManager.STEAL_QUIETEST). */
+	public void setVoiceStealing(int mode){
+		if (voices == null) {return;}
+		voices.setStealMode(mode);
+	}
+	
+	/** Induces a program change in the chosen channel. Each channel keeps its own instrument. */
 	public void setChannelInstrument(int channel, int instrument){
+		if (channels == null) {return;}
 		if (channel >= channels.length || channel < 0) {return;}
 		if (instrument >= 128 || instrument < 0) {return;}
 		channels[channel].programChange(instrument);
+		instruments[channel] = instrument;
+	}
+	
+	/** Returns the instrument last set on the given channel with setChannelInstrument(). */
+	public int getChannelInstrument(int channel){
+		if (channel >= instruments.length || channel < 0) {return 0;}
+		return instruments[channel];
 	}
 	
 	/** Returns true if the current song has finished playing. */
@@ -0,0 +1,76 @@
+package orpheusgame;
+
+import java.io.File;
+
+/** What the SongLibrary knows about a song, gathered once when the file is scanned so that menus never have to
+ *  touch the disk. */
+public class SongInfo {
+
+	private final File file;
+	private final long lastModified;
+	/** The length of the song, in milliseconds. */
+	private final long duration;
+	private final int noteCount;
+	private final int trackCount;
+	/** The slowest and fastest tempos in the song, in beats per minute. */
+	private final float minTempo, maxTempo;
+	/** The number of platforms the song turns into. */
+	private final int platformCount;
+
+	public SongInfo(File file, long lastModified, long duration, int noteCount, int trackCount, float minTempo,
+			float maxTempo, int platformCount){
+		this.file = file;
+		this.lastModified = lastModified;
+		this.duration = duration;
+		this.noteCount = noteCount;
+		this.trackCount = trackCount;
+		this.minTempo = minTempo;
+		this.maxTempo = maxTempo;
+		this.platformCount = platformCount;
+	}
+
+	/** Returns the midi file. */
+	public File getFile(){
+		return file;
+	}
+
+	/** Returns the name of the midi file, for display. */
+	public String getName(){
+		return file.getName();
+	}
+
+	/** Returns the modification time of the file when it was scanned. */
+	public long getLastModified(){
+		return lastModified;
+	}
+
+	/** Returns the length of the song, in milliseconds. */
+	public long getDuration(){
+		return duration;
+	}
+
+	/** Returns the number of notes in the song (on all tracks). */
+	public int getNoteCount(){
+		return noteCount;
+	}
+
+	/** Returns the number of tracks in the song. */
+	public int getTrackCount(){
+		return trackCount;
+	}
+
+	/** Returns the slowest tempo in the song, in beats per minute. */
+	public float getMinTempo(){
+		return minTempo;
+	}
+
+	/** Returns the fastest tempo in the song, in beats per minute. */
+	public float getMaxTempo(){
+		return maxTempo;
+	}
+
+	/** Returns the number of platforms in the song's level. */
+	public int getPlatformCount(){
+		return platformCount;
+	}
+}
@@ -0,0 +1,214 @@
+package orpheusgame;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/** An in-memory index of the songs in the music directory. The directory is scanned in the background, several
+ *  files at a time, and then watched for changes, so that the menus can list songs (and what's in them) every
+ *  frame without doing any file I/O.
+ *  getSongs() returns a snapshot which is replaced, never modified, whenever the index changes. */
+public class SongLibrary {
+
+	/** Only midi files are songs. */
+	private static final FileFilter midi_filter = new FileFilter() {
+		public boolean accept(File f) {
+			return f.isFile() && f.getName().toLowerCase().endsWith(".mid");
+		}
+	};
+
+	/** Songs are listed by file name. */
+	private static final Comparator<SongInfo> by_name = new Comparator<SongInfo>() {
+		public int compare(SongInfo a, SongInfo b) {
+			return a.getName().compareToIgnoreCase(b.getName());
+		}
+	};
+
+	/** The game, which knows how many platforms a song makes. */
+	private Orpheus game;
+	/** The directory holding the songs. */
+	private File dir;
+
+	/** Everything scanned so far, by file. Only touched while holding the lock on this object. */
+	private Map<File, SongInfo> index = new HashMap<File, SongInfo>();
+	/** The index, sorted, as handed out to readers. */
+	private volatile SongInfo[] snapshot = new SongInfo[0];
+	/** The number of scans which haven't finished yet. */
+	private int pending;
+
+	/** Reads the song files. */
+	private ExecutorService scanners;
+	/** Watches the directory for new, changed and deleted files. */
+	private Thread watcher;
+
+	public SongLibrary(File dir, Orpheus game){
+		this.dir = dir;
+		this.game = game;
+		scanners = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SongLibrary scanner");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	/** Starts scanning the directory and watching it for changes. Returns straight away. */
+	public void start(){
+		rescanAll();
+
+		watcher = new Thread(new Runnable() {
+			public void run() {
+				watch();
+			}
+		}, "SongLibrary watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/** Stops scanning and watching. */
+	public void shutdown(){
+		scanners.shutdownNow();
+		if (watcher != null) {watcher.interrupt();}
+	}
+
+	/** Returns every song found so far, sorted by name. Never does any I/O. */
+	public SongInfo[] getSongs(){
+		return snapshot;
+	}
+
+	/** Returns the files of every song found so far, sorted by name. */
+	public File[] getFiles(){
+		SongInfo[] songs = snapshot;
+		File[] files = new File[songs.length];
+		for (int i = 0; i < songs.length; i++){
+			files[i] = songs[i].getFile();
+		}
+		return files;
+	}
+
+	/** Returns true while files are still being scanned. */
+	public synchronized boolean isScanning(){
+		return pending > 0;
+	}
+
+	/** Scans every midi file in the directory, dropping entries for files which have gone. */
+	private void rescanAll(){
+		File[] files = dir.listFiles(midi_filter);
+		if (files == null) {files = new File[0];}
+
+		synchronized (this) {
+			index.keySet().retainAll(Arrays.asList(files));
+			publish();
+		}
+		for (int i = 0; i < files.length; i++){
+			rescan(files[i]);
+		}
+	}
+
+	/** Scans a single file in the background, unless it hasn't changed since it was last scanned. */
+	private void rescan(final File f){
+		synchronized (this) {
+			SongInfo old = index.get(f);
+			if (old != null && old.getLastModified() == f.lastModified()) {return;}
+			pending++;
+		}
+		scanners.execute(new Runnable() {
+			public void run() {
+				SongInfo info = scan(f);
+				synchronized (SongLibrary.this) {
+					pending--;
+					if (info == null) {index.remove(f);}
+					else {index.put(f, info);}
+					publish();
+				}
+			}
+		});
+	}
+
+	/** Reads a midi file and works out its metadata. Returns null if the file isn't a readable midi file. */
+	private SongInfo scan(File f){
+		long modified = f.lastModified();
+		MidiData data;
+		try {data = MidiData.read(f);}
+		catch (Exception e) {
+			System.out.println("Skipping unreadable song " + f.getName() + ": " + e.getMessage());
+			return null;
+		}
+
+		int minMpq = MidiData.default_tempo, maxMpq = MidiData.default_tempo;
+		if (data.getTempoCount() > 0) {
+			minMpq = maxMpq = data.getTempoValue(0);
+			for (int i = 1; i < data.getTempoCount(); i++){
+				minMpq = Math.min(minMpq, data.getTempoValue(i));
+				maxMpq = Math.max(maxMpq, data.getTempoValue(i));
+			}
+		}
+		// Fewer microseconds per beat is a faster tempo
+		return new SongInfo(f, modified, data.getMicrosecondLength() / 1000, data.getNoteCount(),
+				data.getTrackCount(), 60000000.0f / maxMpq, 60000000.0f / minMpq, game.buildLevel(data).size());
+	}
+
+	/** Replaces the snapshot with the current contents of the index. Must hold the lock on this object. */
+	private void publish(){
+		SongInfo[] songs = index.values().toArray(new SongInfo[index.size()]);
+		Arrays.sort(songs, by_name);
+		snapshot = songs;
+	}
+
+	/** Waits for changes to the directory and rescans whatever changed. Runs on the watcher thread. */
+	private void watch(){
+		WatchService ws;
+		Path path = dir.toPath();
+		try {
+			ws = FileSystems.getDefault().newWatchService();
+			path.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException e) {
+			System.out.println("Unable to watch " + dir + " for new songs: " + e.getMessage());
+			return;
+		}
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = ws.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// Missed some events; start over
+						rescanAll();
+						continue;
+					}
+					File f = path.resolve((Path) event.context()).toFile();
+					if (!f.getName().toLowerCase().endsWith(".mid")) {continue;}
+					if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+						synchronized (this) {
+							index.remove(f);
+							publish();
+						}
+					} else {
+						rescan(f);
+					}
+				}
+				if (!key.reset()) {break;}
+			}
+		} catch (InterruptedException e) {
+			// Shutting down
+		} finally {
+			try {ws.close();} catch (IOException e) {}
+		}
+	}
+}
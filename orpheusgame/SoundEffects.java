@@ -0,0 +1,376 @@
+package orpheusgame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/** Plays the game's sound effects (menu blips, collision chimes, platform tones) from PCM buffers that are
+ *  rendered ahead of time, rather than through the live synthesizer. The buffers are made with the software
+ *  synthesizer's offline rendering mode (the effects at startup, each platform tone when it's first played),
+ *  cached on disk, and mixed into a single small-buffered SourceDataLine. That way an effect always takes the
+ *  same (short) time to start, and the song keeps all of the synthesizer's voices to itself.
+ *  If offline rendering or the audio line isn't available, effects are sent to the Song like before. */
+public class SoundEffects implements Runnable {
+
+	/** Played when the player cleanses a platform. */
+	public static final int EFFECT_COLLISION = 0;
+	/** Played when the menu cursor moves. */
+	public static final int EFFECT_MENU = 1;
+	/** Note, velocity and duration (ms) of each named effect, indexed by EFFECT_XXX. */
+	private static final int[][] effect_notes = {{45, 100, 500}, {60, 127, 50}};
+	/** Velocity and duration (ms) of the platform tones. */
+	private static final int tone_velocity = 127, tone_duration = 50;
+	/** How long to keep rendering after the NoteOff, so the release of the note isn't cut off. */
+	private static final int release_ms = 250;
+	/** Bump this if the way effects are rendered changes, so that old cache files are ignored. */
+	private static final int cache_version = 1;
+
+	/** All effects are rendered in (and mixed in) 16-bit signed mono. */
+	private static final float sample_rate = 44100f;
+	private static final AudioFormat format = new AudioFormat(sample_rate, 16, 1, true, false);
+	/** Frames mixed per write to the line. 256 frames is about 6 ms. */
+	private static final int mix_frames = 256;
+	/** The most effects that can sound at once; the oldest one is cut off after that. */
+	private static final int max_voices = 16;
+
+	/** The song, used when an effect couldn't be pre-rendered. */
+	private Song song;
+	/** Where rendered effects are kept between runs. */
+	private File cacheDir;
+
+	/** The rendered effects, indexed by EFFECT_XXX, and the platform tones, indexed by pitch. A null entry means
+	 *  that effect has to go through the live synthesizer. */
+	private short[][] effects = new short[effect_notes.length][];
+	private short[][] tones = new short[128][];
+	/** Which tones have been asked for, so each is only loaded (or rendered) once. */
+	private boolean[] toneRequested = new boolean[128];
+	/** The instrument everything is rendered with, from prerender(). */
+	private int program;
+	/** Loads and renders tones in the background; made when the first one is asked for. */
+	private ExecutorService toneWorker;
+
+	/** Effects currently being mixed, and how far into each one we are. */
+	private short[][] voices = new short[max_voices][];
+	private int[] voicePos = new int[max_voices];
+	private long[] voiceStart = new long[max_voices];
+
+	/** Set once offline rendering has failed, so it isn't tried again for every effect. */
+	private volatile boolean offlineFailed;
+	/** The output of the offline synthesizer, while effects are being rendered. */
+	private AudioInputStream renderStream;
+	/** The line effects are mixed into. */
+	private SourceDataLine line;
+	/** The mixing thread. */
+	private volatile Thread mixer;
+	/** When true, effects aren't played at all (e.g. when fast-forwarding). */
+	private volatile boolean muted;
+
+	/** Effects fall back on the given Song until prerender() has been called. */
+	public SoundEffects(Song song){
+		this.song = song;
+		cacheDir = new File(System.getProperty("user.home"), ".orpheus/sfx");
+	}
+
+	/** Renders every effect with the given instrument (reading them from the disk cache where possible), then
+	 *  opens the audio line. Platform tones are left until they're first played. Returns false if effects will
+	 *  have to use the live synthesizer. */
+	public boolean prerender(int program){
+		this.program = program;
+		Synthesizer synth = null;
+
+		for (int i = 0; i < effects.length; i++){
+			int[] e = effect_notes[i];
+			effects[i] = loadCached(program, e[0], e[1], e[2]);
+			if (effects[i] == null && !offlineFailed) {
+				if (synth == null) {synth = openOffline();}
+				// If it couldn't be rendered it's left null, and goes through the live synthesizer instead
+				if (synth != null) {effects[i] = render(synth, program, e[0], e[1], e[2]);}
+				if (effects[i] != null) {saveCached(effects[i], program, e[0], e[1], e[2]);}
+			}
+		}
+		if (synth != null) {synth.close();}
+
+		// Even if nothing could be rendered, whatever came from the disk cache can still be played
+		return openLine();
+	}
+
+	/** Plays one of the EFFECT_XXX sounds. */
+	public void play(int effect){
+		if (muted) {return;}
+		int[] e = effect_notes[effect];
+		if (line == null || effects[effect] == null) {
+			song.noteOn(e[0], e[1], System.currentTimeMillis() + e[2]);
+			return;
+		}
+		startVoice(effects[effect]);
+	}
+
+	/** Plays the short tone that goes with a platform of the given pitch. The first time a pitch is played it
+	 *  goes through the live synthesizer, while its tone is loaded (or rendered) in the background. */
+	public void playTone(int pitch){
+		if (muted) {return;}
+		short[] pcm = (pitch < 0 || pitch > 127 || line == null) ? null : getTone(pitch);
+		if (pcm == null) {
+			song.noteOn(pitch, tone_velocity, System.currentTimeMillis() + tone_duration);
+			return;
+		}
+		startVoice(pcm);
+	}
+
+	/** Returns the tone for a pitch, or null if it isn't ready; the first call for each pitch starts it loading. */
+	private synchronized short[] getTone(final int pitch){
+		if (tones[pitch] != null || toneRequested[pitch]) {return tones[pitch];}
+		// close() has been called
+		if (toneWorker != null && toneWorker.isShutdown()) {return null;}
+		toneRequested[pitch] = true;
+		if (toneWorker == null) {
+			toneWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SoundEffects tones");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		toneWorker.execute(new Runnable() {
+			public void run() {
+				loadTone(pitch);
+			}
+		});
+		return null;
+	}
+
+	/** Reads a tone from the disk cache, or renders (and caches) it. Called on the tone worker. */
+	private void loadTone(int pitch){
+		short[] pcm = loadCached(program, pitch, tone_velocity, tone_duration);
+		if (pcm == null && !offlineFailed) {
+			Synthesizer synth = openOffline();
+			if (synth == null) {return;}
+			pcm = render(synth, program, pitch, tone_velocity, tone_duration);
+			synth.close();
+			if (pcm != null) {saveCached(pcm, program, pitch, tone_velocity, tone_duration);}
+		}
+		synchronized (this) {
+			tones[pitch] = pcm;
+		}
+	}
+
+	/** Turns effects off (or back on). Effects already playing are left to finish. */
+	public void setMuted(boolean muted){
+		this.muted = muted;
+	}
+
+	/** Stops the mixer and releases the audio line. */
+	public void close(){
+		synchronized (this) {
+			if (toneWorker != null) {toneWorker.shutdownNow();}
+		}
+		Thread t = mixer;
+		mixer = null;
+		if (t != null) {
+			try {t.join(100);}
+			catch (InterruptedException e) {e.printStackTrace();}
+		}
+		if (line != null) {
+			line.close();
+			line = null;
+		}
+	}
+
+	/** Hands a buffer to the mixer, taking over the oldest voice if they're all busy. */
+	private synchronized void startVoice(short[] pcm){
+		int slot = 0;
+		for (int i = 0; i < max_voices; i++){
+			if (voices[i] == null) {slot = i; break;}
+			if (voiceStart[i] < voiceStart[slot]) {slot = i;}
+		}
+		voices[slot] = pcm;
+		voicePos[slot] = 0;
+		voiceStart[slot] = System.nanoTime();
+	}
+
+	/** Mixes the active voices into the line. Called internally by the mixing thread. */
+	public void run(){
+		int[] acc = new int[mix_frames];
+		byte[] out = new byte[mix_frames * 2];
+		SourceDataLine dest = line;
+
+		while (mixer == Thread.currentThread()) {
+			synchronized (this) {
+				for (int v = 0; v < max_voices; v++){
+					short[] pcm = voices[v];
+					if (pcm == null) {continue;}
+					int pos = voicePos[v];
+					int n = Math.min(mix_frames, pcm.length - pos);
+					for (int i = 0; i < n; i++){
+						acc[i] += pcm[pos + i];
+					}
+					voicePos[v] = pos + n;
+					if (voicePos[v] >= pcm.length) {voices[v] = null;}
+				}
+			}
+			for (int i = 0; i < mix_frames; i++){
+				int s = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, acc[i]));
+				out[2*i] = (byte) s;
+				out[2*i + 1] = (byte) (s >> 8);
+				acc[i] = 0;
+			}
+			// Blocks until the line has room, which is what paces this loop
+			dest.write(out, 0, out.length);
+		}
+	}
+
+	/** Opens a small-buffered line and starts the mixing thread. */
+	private boolean openLine(){
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			// Two chunks of buffer: enough to avoid dropouts, small enough to keep latency down
+			line.open(format, mix_frames * 2 * 2);
+			line.start();
+		} catch (Exception e) {
+			System.out.println("Unable to open a line for sound effects; using the synthesizer instead.");
+			line = null;
+			return false;
+		}
+		mixer = new Thread(this, "SoundEffects mixer");
+		mixer.setDaemon(true);
+		mixer.setPriority(Thread.MAX_PRIORITY);
+		mixer.start();
+		return true;
+	}
+
+	//====================/ Rendering /===================/
+
+	/** Gets a software synthesizer running in its offline (pull) mode, so we can read its output as fast as it
+	 *  can make it. This isn't part of the public javax.sound API, hence the reflection; on newer JVMs it also
+	 *  needs '--add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED'. Returns null if it can't be done. */
+	private Synthesizer openOffline(){
+		try {
+			Synthesizer synth = MidiSystem.getSynthesizer();
+			Class<?> audioSynth = Class.forName("com.sun.media.sound.AudioSynthesizer");
+			if (!audioSynth.isInstance(synth)) {
+				System.out.println("Offline MIDI rendering isn't available; using the synthesizer for sound effects.");
+				offlineFailed = true;
+				return null;
+			}
+			Method openStream = audioSynth.getMethod("openStream", AudioFormat.class, Map.class);
+			renderStream = (AudioInputStream) openStream.invoke(synth, format, null);
+			return synth;
+		} catch (Exception e) {
+			System.out.println("Offline MIDI rendering isn't available; using the synthesizer for sound effects.");
+			offlineFailed = true;
+			return null;
+		}
+	}
+
+	/** Plays a single note on the offline synthesizer and reads back the result. Returns null if that fails, or
+	 *  the synthesizer stops short, so a silent (or cut off) effect is never kept. */
+	private short[] render(Synthesizer synth, int program, int note, int velocity, int duration){
+		int frames = (int) ((duration + release_ms) * sample_rate / 1000);
+		byte[] raw = new byte[frames * 2];
+
+		try {
+			Receiver rcv = synth.getReceiver();
+			// Timestamps are in microseconds of rendered audio, not wall-clock time
+			long t0 = synth.getMicrosecondPosition();
+			rcv.send(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 0, program, 0), t0);
+			rcv.send(new ShortMessage(ShortMessage.NOTE_ON, 0, note, velocity), t0);
+			rcv.send(new ShortMessage(ShortMessage.NOTE_OFF, 0, note, 0), t0 + duration * 1000L);
+
+			int read = 0;
+			while (read < raw.length) {
+				int n = renderStream.read(raw, read, raw.length - read);
+				if (n < 0) {
+					System.out.println("Offline synthesizer stopped short rendering note " + note + "; using the live one for it.");
+					return null;
+				}
+				read += n;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		short[] pcm = new short[frames];
+		for (int i = 0; i < frames; i++){
+			pcm[i] = (short) ((raw[2*i] & 0xFF) | (raw[2*i + 1] << 8));
+		}
+		return pcm;
+	}
+
+	//====================/ Disk Cache /===================/
+
+	/** The cache file for an effect; the name holds everything the rendered sound depends on. */
+	private File cacheFile(int program, int note, int velocity, int duration){
+		return new File(cacheDir, "v" + cache_version + "_" + (int) sample_rate + "_p" + program + "_n" + note +
+				"_v" + velocity + "_d" + duration + ".pcm");
+	}
+
+	/** Reads a previously rendered effect, or returns null if there isn't one. */
+	private short[] loadCached(int program, int note, int velocity, int duration){
+		File f = cacheFile(program, note, velocity, duration);
+		if (!f.isFile()) {return null;}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			short[] pcm = new short[(int) (f.length() / 2)];
+			for (int i = 0; i < pcm.length; i++){
+				pcm[i] = in.readShort();
+			}
+			return pcm;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {in.close();} catch (IOException e) {}
+			}
+		}
+	}
+
+	/** Writes a rendered effect to the disk cache. Failing to do so isn't a problem; it'll be rendered again.
+	 *  It's written to a temporary file and then renamed, so a half-written file is never taken for a whole one. */
+	private void saveCached(short[] pcm, int program, int note, int velocity, int duration){
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {return;}
+
+		File f = cacheFile(program, note, velocity, duration);
+		File tmp = new File(cacheDir, f.getName() + ".tmp");
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			for (int i = 0; i < pcm.length; i++){
+				out.writeShort(pcm[i]);
+			}
+			out.close();
+			out = null;
+			written = true;
+		} catch (IOException e) {
+			System.out.println("Couldn't cache sound effect: " + e.getMessage());
+		} finally {
+			if (out != null) {
+				try {out.close();} catch (IOException e) {}
+			}
+		}
+		if (!written || !tmp.renameTo(f)) {tmp.delete();}
+	}
+}
@@ -2,58 +2,87 @@ package orpheusgame;
 
 import java.awt.Graphics;
 import java.awt.Image;
-import java.awt.Transparency;
 
-/** The image class used by the Sprite Manager. */
+/** The image class used by the Sprite Manager. A Sprite either has an image of its own, or is a region of an
+ *  AtlasPage shared with other sprites (see SpriteManager.packAtlas()). Either way it's drawn the same; a
+ *  packed Sprite is drawn from the page's copy in video memory when it's drawn onto the screen or the
+ *  Compositor's frame. */
 public class Sprite {
 
 	private String ref; // The unique name of the file associated with this Sprite
 	private Image image; // The reference to a Sprite Manager image;
+	private int width, height; // The size of the Sprite, in pixels
+
+	private AtlasPage page; // The atlas page this Sprite has been packed into, or null if it hasn't
+	private int ax, ay; // Where on the atlas page this Sprite is (top left corner)
+
 
-	
 	/** To construct a Sprite, one must give the file name of the image. */
 	public Sprite(String ref, Image image){
 		this.ref = ref;
-		this.image = image;
+		setImage(image);
 	}
 
 	/** Returns the filename associated with this sprite's image. */
 	public String getRef(){
 		return ref;
 	}
-	
-	/** Returns the image associated with this sprite. */
+
+	/** Returns the image associated with this sprite. For a packed sprite, this is a view of its part of the
+	 *  atlas page; it's fine to read from, but draw the Sprite itself rather than this image. */
 	public Image getImage(){
 		return image;
 	}
-	
-	/** Sets the image. */
+
+	/** Sets the image. If this Sprite was packed into an atlas, it's taken back out. */
 	public void setImage(Image img){
 		this.image = img;
+		width = img.getWidth(null);
+		height = img.getHeight(null);
+		page = null;
+	}
+
+	/** Moves this Sprite into an atlas page, at the given position. The page must already hold a copy of the
+	 *  image there. */
+	public void setRegion(AtlasPage page, int x, int y){
+		this.page = page;
+		ax = x;
+		ay = y;
+		image = page.getBacking().getSubimage(x, y, width, height);
+	}
+
+	/** Returns the atlas page this Sprite was packed into, or null if it has an image of its own. */
+	public AtlasPage getPage(){
+		return page;
 	}
-	
+
 	/** Returns the width of the Sprite, in pixels. */
 	public int getWidth(){
-		return image.getWidth(null);
+		return width;
 	}
-	
+
 	/** Returns the height of the Sprite, in pixels. */
 	public int getHeight(){
-		return image.getHeight(null);
+		return height;
 	}
-	
+
 	/** Draws this sprite at the specified coordinates and graphics context. */
 	public void draw(Graphics g, int x, int y){
-		g.drawImage(image, x, y, null);
+		if (page == null) {
+			g.drawImage(image, x, y, null);
+		} else {
+			page.draw(g, x, y, x + width, y + height, ax, ay, ax + width, ay + height);
+		}
 	}
-	
+
 	/** Draws this sprite at the specified coordinates and graphics context except that it will be drawn flipped horizontally!. */
 	public void drawFlipped(Graphics g, int x, int y){
-		g.drawImage(image, x + image.getWidth(null), y, x, y + image.getWidth(null), 0, 0, image.getWidth(null), image.getHeight(null), null);
+		drawPart(g, x, y, 0, 0, width, height, true);
 	}
-	
-	/** Draws a rectangular portion of the image held within this sprite. 
-	 *  @param g The graphics context upon which the image will be drawn. 
+
+	/** Draws a rectangular portion of the image held within this sprite. If the portion runs off the edge of the
+	 *  sprite, only the part that's on the sprite is drawn (just like Graphics.drawImage does for a whole image).
+	 *  @param g The graphics context upon which the image will be drawn.
 	 *  @param dx destination x coordinate of the top left corner
 	 *  @param dy destination y coordinate of the top left corner
 	 *  @param sx source coordinate (top left corner)
@@ -61,11 +90,24 @@ public class Sprite {
 	 *  @param width the width of the image
 	 *  @param height the height of the image.
 	 *  @param flipped whether or not the image is to be flipped horizontally */
-	public void drawPart(Graphics g, int dx, int dy, int sx, int sy, int width, int height, boolean flipped) { 
-		if (!flipped) {
-			g.drawImage(image, dx, dy, dx+width, dy+height, sx, sy, sx+width, sy+height, null);
+	public void drawPart(Graphics g, int dx, int dy, int sx, int sy, int width, int height, boolean flipped) {
+		// Don't read past the edge of the sprite: on an atlas page, that's somebody else's sprite
+		int w = Math.min(width, this.width - sx);
+		int h = Math.min(height, this.height - sy);
+		if (w <= 0 || h <= 0) {return;}
+
+		if (page == null) {
+			if (!flipped) {
+				g.drawImage(image, dx, dy, dx+w, dy+h, sx, sy, sx+w, sy+h, null);
+			} else {
+				g.drawImage(image, dx+width, dy, dx+width-w, dy+h, sx, sy, sx+w, sy+h, null);
+			}
 		} else {
-			g.drawImage(image, dx+width, dy, dx, dy+height, sx, sy, sx+width, sy+height, null);
+			if (!flipped) {
+				page.draw(g, dx, dy, dx+w, dy+h, ax+sx, ay+sy, ax+sx+w, ay+sy+h);
+			} else {
+				page.draw(g, dx+width, dy, dx+width-w, dy+h, ax+sx, ay+sy, ax+sx+w, ay+sy+h);
+			}
 		}
 	}
 
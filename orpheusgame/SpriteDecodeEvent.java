@@ -0,0 +1,34 @@
+package orpheusgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event for every image SpriteManager decodes, or filters, or reads from its disk cache. */
+@Name("orpheusgame.SpriteDecode")
+@Label("Sprite Decode")
+@Category({"Orpheus", "Graphics"})
+@Description("An image loaded into a sprite")
+public class SpriteDecodeEvent extends Event {
+
+	/** The image was decoded from its file. */
+	public static final String SOURCE_FILE = "file";
+	/** A filtered image was read back from the disk cache. */
+	public static final String SOURCE_DISK_CACHE = "disk cache";
+	/** A filtered image was made from the original (and saved to the disk cache). */
+	public static final String SOURCE_FILTERED = "filtered";
+
+	@Label("Sprite")
+	public String ref;
+
+	@Label("Source")
+	public String source;
+
+	@Label("Width")
+	public int width;
+
+	@Label("Height")
+	public int height;
+}
@@ -1,37 +1,66 @@
 package orpheusgame;
 
-import java.awt.AlphaComposite;
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
-import java.awt.Toolkit;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.ImageProducer;
-import java.awt.image.RGBImageFilter;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 
 /** The SpriteManager allows us to load a lot of image data, and have individual
  *  game objects then reference this data.
  *  For ease of access, the SpriteManager is singleton. We really only need one instance.
+ *  It's safe to use from any thread. Images can be decoded ahead of time, several at once, with preload().
  * */
 public class SpriteManager {
 
 	private static final SpriteManager SPRT_MNGR = new SpriteManager();
 
-	// An ArrayList containing all the loaded image data. Note that this ArrayList is of type Sprite.
-	// A word to the wise: since ArrayList is not thread-safe, we must be sure to do any structural
-	// modification in ONE thread. This means adding or removing objects to the list.
-	private ArrayList<Sprite> data = new ArrayList<Sprite>();
+	// All the loaded (or loading) image data, by filename. Each file gets exactly one future, no matter how
+	// many threads ask for it at once, so a file is only ever decoded once.
+	private ConcurrentHashMap<String, CompletableFuture<Sprite>> data = new ConcurrentHashMap<String, CompletableFuture<Sprite>>();
+	
+	// Decodes images in the background for preload(). One thread per core: decoding is all CPU work.
+	private ExecutorService decoders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SpriteManager decoder");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	/** Filters for getFilteredSprite(). Tints the image like mutateRGB(). */
+	public static final String FILTER_TINT = "tint";
+	/** Makes one color transparent, like makeColorTransparent(). */
+	public static final String FILTER_COLOR_KEY = "key";
+	
+	// The width and height of each atlas page, the largest sprite that gets packed, and the gap between sprites
+	private static final int atlas_page_size = 512;
+	private static final int atlas_max_sprite = 256;
+	private static final int atlas_padding = 1;
+	
+	// Where filtered images are kept between runs of the game
+	private File cacheDir = new File(System.getProperty("user.home"), ".orpheus/sprites");
 	
 	private SpriteManager() {} // Prevents instantiation of SpriteManager by other classes.
 
@@ -47,20 +76,143 @@ public class SpriteManager {
 	
 	/** Given a filename, returns a reference to a Sprite with that filename (or else creates a new one if
 	 * none exists). Ultimately, we should only ever load a file ONCE. This whole class and method ensures
-	 * that this will be so.*/
-	public Sprite getSprite(String ref, int transparency){
+	 * that this will be so. If the file is being preloaded, this waits for it; if nobody has asked for it yet,
+	 * it's decoded right here on the calling thread.*/
+	public Sprite getSprite(final String ref, final int transparency){
+		return loadNow(ref, new Supplier<Sprite>() {
+			public Sprite get() {
+				return decode(ref, transparency);
+			}
+		});
+	}
+	
+	/** Starts decoding the given file in the background, unless it's already loaded or loading. */
+	public CompletableFuture<Sprite> getSpriteAsync(final String ref, final int transparency){
+		return loadLater(ref, new Supplier<Sprite>() {
+			public Sprite get() {
+				return decode(ref, transparency);
+			}
+		});
+	}
+	
+	/** Returns a copy of the given image file with mutateRGB() applied, baked into an accelerated image. The
+	 *  result is kept in memory and on disk, so later calls (and later runs of the game) skip both decoding and
+	 *  filtering. */
+	public Sprite getTintedSprite(String ref, int transparency, Color tint){
+		return getFilteredSprite(ref, transparency, FILTER_TINT, tint.getRGB());
+	}
+	
+	/** Returns a copy of the given image file with makeColorTransparent() applied, cached like getTintedSprite(). */
+	public Sprite getKeyedSprite(String ref, Color key){
+		return getFilteredSprite(ref, Transparency.BITMASK, FILTER_COLOR_KEY, key.getRGB());
+	}
+	
+	/** Returns a filtered copy of an image file (see FILTER_XXX). 'param' is the filter's color, as an ARGB int. */
+	public Sprite getFilteredSprite(final String ref, final int transparency, final String filter, final int param){
+		return loadNow(variantKey(ref, filter, param), new Supplier<Sprite>() {
+			public Sprite get() {
+				return bake(ref, transparency, filter, param);
+			}
+		});
+	}
+	
+	/** Starts making a filtered copy of an image file in the background. */
+	public CompletableFuture<Sprite> getFilteredSpriteAsync(final String ref, final int transparency, final String filter, final int param){
+		return loadLater(variantKey(ref, filter, param), new Supplier<Sprite>() {
+			public Sprite get() {
+				return bake(ref, transparency, filter, param);
+			}
+		});
+	}
+	
+	/** Returns the sprite stored under 'key', loading it on this thread if nobody else has started to. */
+	private Sprite loadNow(String key, Supplier<Sprite> loader){
+		CompletableFuture<Sprite> mine = new CompletableFuture<Sprite>();
+		CompletableFuture<Sprite> existing = data.putIfAbsent(key, mine);
+		if (existing != null) {
+			// Somebody else has it (or is busy loading it)
+			return existing.join();
+		}
+		
+		try {
+			Sprite s = loader.get();
+			mine.complete(s);
+			return s;
+		} catch (RuntimeException e) {
+			// Don't leave anyone else waiting on it forever
+			mine.completeExceptionally(e);
+			throw e;
+		}
+	}
+	
+	/** Returns the sprite stored under 'key', loading it on a decoder thread if nobody else has started to. */
+	private CompletableFuture<Sprite> loadLater(String key, final Supplier<Sprite> loader){
+		CompletableFuture<Sprite> mine = new CompletableFuture<Sprite>();
+		CompletableFuture<Sprite> existing = data.putIfAbsent(key, mine);
+		if (existing != null) {return existing;}
 		
-		// Check to see if the Image is already part of the ArrayList...technically a Hash Map would
-		// be better for this, but this is a simple implementation and won't likely have to deal with
-		// very large ArrayLists.
+		final CompletableFuture<Sprite> future = mine;
+		decoders.execute(new Runnable() {
+			public void run() {
+				try {future.complete(loader.get());}
+				catch (RuntimeException e) {future.completeExceptionally(e);}
+			}
+		});
+		return future;
+	}
+	
+	/** Decodes every sprite listed in a manifest, in parallel. The manifest is a text resource with one image per
+	 *  line, optionally followed by OPAQUE, BITMASK or TRANSLUCENT and then by a filter such as 'tint=5A7340' or
+	 *  'key=FF00FF' (see FILTER_XXX), separated by tabs. Blank lines and lines starting with # are ignored. The
+	 *  returned future completes when they're all loaded. */
+	public CompletableFuture<Void> preload(String manifestRef){
+		ArrayList<CompletableFuture<Sprite>> loads = new ArrayList<CompletableFuture<Sprite>>();
 		
-		// Loop through our ArrayList
-		for (int i = 0; i < data.size(); i++){
-			// If we already have such a file loaded, just return a reference to the object:
-			if (data.get(i).getRef() == ref) { return data.get(i);}
+		InputStream in = this.getClass().getResourceAsStream(manifestRef);
+		if (in == null) {
+			System.out.println("Can't find sprite manifest: " + manifestRef);
+			return CompletableFuture.completedFuture(null);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {continue;}
+				
+				String[] parts = line.split("\\t");
+				int transparency = Transparency.BITMASK;
+				String filter = null;
+				int param = 0;
+				for (int i = 1; i < parts.length; i++){
+					String t = parts[i].trim();
+					if (t.equals("OPAQUE")) {transparency = Transparency.OPAQUE;}
+					else if (t.equals("TRANSLUCENT")) {transparency = Transparency.TRANSLUCENT;}
+					else if (t.indexOf('=') > 0) {
+						filter = t.substring(0, t.indexOf('='));
+						param = 0xFF000000 | Integer.parseInt(t.substring(t.indexOf('=') + 1), 16);
+					}
+				}
+				if (filter == null) {
+					loads.add(getSpriteAsync(parts[0].trim(), transparency));
+				} else {
+					loads.add(getFilteredSpriteAsync(parts[0].trim(), transparency, filter, param));
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read sprite manifest: " + manifestRef);
+			e.printStackTrace();
+		} finally {
+			try {reader.close();} catch (IOException e) {}
 		}
 		
-		// Okay, we don't have this image loaded yet, let's do so:
+		return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]));
+	}
+	
+	/** Reads an image file and copies it into an image compatible with the screen. */
+	private Sprite decode(String ref, int transparency){
+		SpriteDecodeEvent event = new SpriteDecodeEvent();
+		event.begin();
 		BufferedImage source = null;
 		try {
 			//URL url = this.getClass().getClassLoader().getResource(ref);
@@ -74,81 +226,289 @@ public class SpriteManager {
 			System.exit(1);
 		}
 		
+		Sprite s = new Sprite(ref, toCompatible(source, transparency));
+		commit(event, s, SpriteDecodeEvent.SOURCE_FILE);
+		return s;
+	}
+	
+	/** Fills in and commits a SpriteDecodeEvent, if it's being recorded. */
+	private static void commit(SpriteDecodeEvent event, Sprite s, String source){
+		event.end();
+		if (event.shouldCommit()) {
+			event.ref = s.getRef();
+			event.source = source;
+			event.width = s.getWidth();
+			event.height = s.getHeight();
+			event.commit();
+		}
+	}
+	
+	/** Makes a blank image in the same format as the screen, so that drawing it there is a straight copy (and
+	 *  Java2D can keep it in video memory). Without a screen at all (java.awt.headless, e.g. in the benchmarks)
+	 *  it's a plain BufferedImage instead. */
+	public static BufferedImage createCompatibleImage(int width, int height, int transparency){
+		if (GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		}
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(width, height, transparency);
+	}
+	
+	/** Copies an image into a new one which is compatible with the screen. */
+	private BufferedImage toCompatible(Image source, int transparency){
 		// Now here's the fun part. We get to create a hardware graphics accelerated image. This should
 		// be loads better than a standard BufferedImage.
-		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
-		Image gc_image = gc.createCompatibleImage(source.getWidth(), source.getHeight(), transparency);
+		BufferedImage gc_image = createCompatibleImage(source.getWidth(null), source.getHeight(null), transparency);
 		
 		// Good, we've got a device compatible, but blank (and transparent!), image. Now let's copy our source image to it!
-		Graphics2D g2d = (Graphics2D) gc_image.getGraphics();
+		Graphics2D g2d = gc_image.createGraphics();
 		g2d.drawImage(source, 0, 0, null);
+		g2d.dispose();
+		return gc_image;
+	}
+	
+	/** Makes a filtered copy of an image file: from the disk cache if it's there, otherwise by loading the
+	 *  original and filtering it, in which case the result is saved to the disk cache. */
+	private Sprite bake(String ref, int transparency, String filter, int param){
+		SpriteDecodeEvent event = new SpriteDecodeEvent();
+		event.begin();
+		String key = variantKey(ref, filter, param);
+		File cached = variantFile(ref, filter, param);
+		
+		if (cached != null && cached.isFile()) {
+			try {
+				BufferedImage img = ImageIO.read(cached);
+				if (img != null) {
+					Sprite s = new Sprite(key, toCompatible(img, transparency));
+					commit(event, s, SpriteDecodeEvent.SOURCE_DISK_CACHE);
+					return s;
+				}
+			} catch (IOException e) {
+				// Fall through and make it again
+			}
+		}
+		
+		// Use the original if it's already loaded; otherwise decode a private copy rather than waiting on
+		// another thread, which could tie up every decoder thread waiting on each other.
+		CompletableFuture<Sprite> original = data.get(ref);
+		Image source;
+		if (original != null && original.isDone() && !original.isCompletedExceptionally()) {
+			source = original.join().getImage();
+		} else {
+			source = decode(ref, transparency).getImage();
+		}
+		BufferedImage filtered;
+		if (filter.equals(FILTER_TINT)) {
+			filtered = mutateRGB(source, new Color(param, true));
+		} else if (filter.equals(FILTER_COLOR_KEY)) {
+			filtered = makeColorTransparent(source, new Color(param, true));
+		} else {
+			throw new IllegalArgumentException("Unknown sprite filter: " + filter);
+		}
 		
-		// Now we've got to add it to our repository: the ArrayList called data:
-		Sprite the_new_guy = new Sprite(ref, gc_image);
-		data.add(the_new_guy);
+		if (cached != null) {
+			// Written to a temporary file and then renamed, so a crash (or another copy of the game baking the same
+			// sprite) never leaves a half-written PNG under the real name
+			File tmp = null;
+			try {
+				cached.getParentFile().mkdirs();
+				tmp = File.createTempFile("bake", ".tmp", cached.getParentFile());
+				if (ImageIO.write(filtered, "png", tmp) && tmp.renameTo(cached)) {tmp = null;}
+			} catch (IOException e) {
+				System.out.println("Couldn't cache sprite " + key + ": " + e.getMessage());
+			}
+			if (tmp != null) {tmp.delete();}
+		}
+		Sprite s = new Sprite(key, filtered);
+		commit(event, s, SpriteDecodeEvent.SOURCE_FILTERED);
+		return s;
+	}
+	
+	/** The name a filtered image is stored under in memory. */
+	private static String variantKey(String ref, String filter, int param){
+		return ref + "#" + filter + "=" + Integer.toHexString(param);
+	}
+	
+	/** The disk cache file for a filtered image. The name includes the original's modification time, so editing
+	 *  the original makes a new one. Returns null if the original can't be found. */
+	private File variantFile(String ref, String filter, int param){
+		URL url = this.getClass().getResource(ref);
+		if (url == null) {return null;}
+		long stamp;
+		try {stamp = url.openConnection().getLastModified();}
+		catch (IOException e) {return null;}
 		
-		// Finally, return
-		return the_new_guy;
+		String name = ref.replaceAll("[^A-Za-z0-9._-]", "_") + "." + filter + "-" + Integer.toHexString(param) + "." + stamp + ".png";
+		return new File(cacheDir, name);
+	}
+	
+	/** Cuts a sprite sheet into frames of the given size, left to right and then top to bottom, each copied into a
+	 *  Sprite of its own. If 'mirrored' is true the frames are flipped horizontally as they're copied, so a
+	 *  character facing the other way is drawn with a plain blit instead of a flipped drawImage. Frames are kept
+	 *  like any other sprite (and get packed by packAtlas()), so asking twice doesn't cut the sheet twice. */
+	public Sprite[] getFrames(final Sprite sheet, final int frameWidth, final int frameHeight, final boolean mirrored){
+		int columns = sheet.getWidth() / frameWidth;
+		int rows = sheet.getHeight() / frameHeight;
+		Sprite[] frames = new Sprite[columns * rows];
+
+		for (int i = 0; i < frames.length; i++){
+			final int sx = (i % columns) * frameWidth;
+			final int sy = (i / columns) * frameHeight;
+			String key = sheet.getRef() + "@" + frameWidth + "x" + frameHeight + ":" + i + (mirrored ? "~" : "");
+			frames[i] = loadNow(key, new Supplier<Sprite>() {
+				public Sprite get() {
+					return cutFrame(sheet, sx, sy, frameWidth, frameHeight, mirrored);
+				}
+			});
+		}
+		return frames;
+	}
+
+	/** Copies one frame out of a sprite sheet into a new accelerated image. */
+	private Sprite cutFrame(Sprite sheet, int sx, int sy, int w, int h, boolean mirrored){
+		BufferedImage frame = createCompatibleImage(w, h, transparencyOf(sheet.getImage()));
+		Graphics2D g2d = frame.createGraphics();
+		if (mirrored) {
+			g2d.drawImage(sheet.getImage(), w, 0, 0, h, sx, sy, sx + w, sy + h, null);
+		} else {
+			g2d.drawImage(sheet.getImage(), 0, 0, w, h, sx, sy, sx + w, sy + h, null);
+		}
+		g2d.dispose();
+		return new Sprite(sheet.getRef() + "@" + sx + "," + sy + (mirrored ? "~" : ""), frame);
+	}
+
+	/** Packs every loaded sprite that's small enough (tiles, player frames, platforms, the cursor...) into as few
+	 *  atlas pages as possible, so that drawing them switches between fewer surfaces. Each page keeps a copy in
+	 *  video memory (see AtlasPage), which the game draws from, since the Compositor's frame is in video memory
+	 *  too. Sprites keep working as before; they just draw from the atlas from now on. Sprites loaded later
+	 *  aren't packed unless this is called again. Returns the number of pages made. */
+	public int packAtlas(){
+		// Gather up everything that's loaded, small and not packed yet
+		ArrayList<Sprite> small = new ArrayList<Sprite>();
+		for (CompletableFuture<Sprite> f : data.values()){
+			if (!f.isDone() || f.isCompletedExceptionally()) {continue;}
+			Sprite s = f.join();
+			if (s.getPage() == null && s.getWidth() <= atlas_max_sprite && s.getHeight() <= atlas_max_sprite) {small.add(s);}
+		}
+		if (small.isEmpty()) {return 0;}
+		
+		// Tallest first, then fill shelves (rows) left to right
+		Collections.sort(small, new Comparator<Sprite>() {
+			public int compare(Sprite a, Sprite b) {
+				return b.getHeight() - a.getHeight();
+			}
+		});
+		
+		int pages = 0;
+		int start = 0; // The first sprite on the current page
+		int[] px = new int[small.size()];
+		int[] py = new int[small.size()];
+		int x = 0, y = 0, shelf = 0;
+		
+		for (int i = 0; i <= small.size(); i++){
+			boolean full = false;
+			if (i < small.size()) {
+				Sprite s = small.get(i);
+				if (x + s.getWidth() > atlas_page_size) {
+					// Next shelf
+					y += shelf + atlas_padding;
+					x = 0;
+					shelf = 0;
+				}
+				full = (y + s.getHeight() > atlas_page_size);
+			}
+			
+			if (i == small.size() || full) {
+				// Copy everything placed so far onto a page, and point the sprites at it
+				BufferedImage img = createCompatibleImage(atlas_page_size, atlas_page_size, Transparency.TRANSLUCENT);
+				Graphics2D g2d = img.createGraphics();
+				for (int j = start; j < i; j++){
+					g2d.drawImage(small.get(j).getImage(), px[j], py[j], null);
+				}
+				g2d.dispose();
+				AtlasPage page = new AtlasPage(img);
+				for (int j = start; j < i; j++){
+					small.get(j).setRegion(page, px[j], py[j]);
+				}
+				pages++;
+				if (i == small.size()) {break;}
+				
+				start = i;
+				x = 0;
+				y = 0;
+				shelf = 0;
+			}
+			
+			px[i] = x;
+			py[i] = y;
+			x += small.get(i).getWidth() + atlas_padding;
+			shelf = Math.max(shelf, small.get(i).getHeight());
+		}
+		return pages;
+	}
+	
+	/** Returns the number of sprites loaded (not counting ones still being decoded). */
+	public int getCacheSize(){
+		int loaded = 0;
+		for (CompletableFuture<Sprite> f : data.values()){
+			if (f.isDone() && !f.isCompletedExceptionally()) {loaded++;}
+		}
+		return loaded;
+	}
+	
+	/** Returns roughly how much memory the loaded sprites take up, in bytes: 4 per pixel, for every sprite
+	 *  and every atlas page (a packed sprite keeps its own image too). Copies Java2D keeps in video memory
+	 *  aren't counted. */
+	public long getCacheBytes(){
+		long bytes = 0;
+		HashSet<AtlasPage> pages = new HashSet<AtlasPage>();
+		for (CompletableFuture<Sprite> f : data.values()){
+			if (!f.isDone() || f.isCompletedExceptionally()) {continue;}
+			Sprite s = f.join();
+			bytes += 4L * s.getWidth() * s.getHeight();
+			if (s.getPage() != null && pages.add(s.getPage())) {
+				bytes += 4L * s.getPage().getWidth() * s.getPage().getHeight();
+			}
+		}
+		return bytes;
 	}
 	
 	/** Returns a string containing filenames of all elements of the data list. */
 	@Override
 	public String toString(){
 		String result = "";	
-		for (int i = 0; i < data.size(); i++){
-			result += data.get(i).getRef() + "\n";
+		for (String ref : data.keySet()){
+			result += ref + "\n";
 		}
 		return result;
 	}
 	
-	/** Takes an image and transforms it so that all pixels of the given color become fully transparent. */
+	/** Takes an image and transforms it so that all pixels of the given color become fully transparent. The
+	 *  result is a new accelerated image; the original isn't changed. */
 	// Does this need to be static?? I.E public static Image makeColorTransparent...
-	public Image makeColorTransparent(Image im, final Color color) {
-
-		ImageFilter filter = new RGBImageFilter() {
-			// the color we are looking for... Alpha bits are set to opaque
-			public int markerRGB = color.getRGB() | 0xFF000000;
-
-			public final int filterRGB(int x, int y, int rgb) {
-				if ((rgb | 0xFF000000) == markerRGB) {
-					// Mark the alpha bits as zero - transparent
-					return 0x00FFFFFF & rgb;
-				} else {
-					// nothing to do
-					return rgb;
-				}
-			}
-		};
-
-		ImageProducer ip = new FilteredImageSource(im.getSource(), filter);
-		return Toolkit.getDefaultToolkit().createImage(ip);
+	public BufferedImage makeColorTransparent(Image im, Color color) {
+		// Needs at least a bitmask, or the transparent pixels would come out black
+		return applyFilter(im, RasterFilter.colorKey(color), Math.max(transparencyOf(im), Transparency.BITMASK));
 	}
 	
 	/** A fun little image filter shifts the image to look more red, green, blue or some combination thereof. The brighter the given
 	 *  color is from middle gray (128, 128, 128) so shall the resultant image be brighter. Any darker from middle gray and the resultant image
-	 *  will be darker too. */
-	public Image mutateRGB(Image im, final Color color){
-		ImageFilter filter = new RGBImageFilter() {
-
-			float rFactor = 1 + (color.getRed() - 128) / 128.0f;
-			float gFactor = 1 + (color.getGreen() - 128) / 128.0f;
-			float bFactor = 1 + (color.getBlue() - 128) / 128.0f;
-			
-			// CAN'T ignore alpha channel. You hafta do the full four bytes
-			public final int filterRGB(int x, int y, int rgb) {
-				int a = rgb & 0xff000000;
-				int r = (rgb >> 16) & 0xff;
-				int g = (rgb >> 8) & 0xff;
-				int b = rgb & 0xff;
-				r = clamp((int)(r * rFactor));
-				g = clamp((int)(g * gFactor));
-				b = clamp((int)(b * bFactor));
-				return a | (r << 16) | (g << 8) | b;
-			}
-		};
-
-		ImageProducer ip = new FilteredImageSource(im.getSource(), filter);
-		return Toolkit.getDefaultToolkit().createImage(ip);
+	 *  will be darker too. The result is a new accelerated image; the original isn't changed. */
+	public BufferedImage mutateRGB(Image im, Color color){
+		return applyFilter(im, RasterFilter.tint(color), transparencyOf(im));
+	}
+	
+	/** Runs a filter over a copy of an image, and bakes the result into a new accelerated image. Unlike a
+	 *  FilteredImageSource, this gives an image Java2D can keep in video memory. */
+	public BufferedImage applyFilter(Image im, RasterFilter filter, int transparency){
+		BufferedImage argb = RasterFilter.toARGB(im);
+		filter.apply(argb);
+		return toCompatible(argb, transparency);
+	}
+	
+	/** Returns the transparency of an image, or BITMASK if it can't be told. */
+	private static int transparencyOf(Image im){
+		return (im instanceof Transparency) ? ((Transparency) im).getTransparency() : Transparency.BITMASK;
 	}
 	
 	/** Clamps the color to between 0 and 255. */
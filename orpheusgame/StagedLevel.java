@@ -0,0 +1,44 @@
+package orpheusgame;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import javax.sound.midi.Sequence;
+
+/** Everything needed to start playing a song: its parsed MIDI data, the Sequence for the sequencer, and the
+ *  platforms built from it. A StagedLevel can be put together on any thread (see Playlist); switching the game
+ *  over to it is then just a matter of swapping references (see Orpheus.installLevel). */
+public class StagedLevel {
+
+	private final File source;
+	private final MidiData data;
+	private final Sequence sequence;
+	private final ArrayList<Platform> platforms;
+	
+	public StagedLevel(File source, MidiData data, Sequence sequence, ArrayList<Platform> platforms){
+		this.source = source;
+		this.data = data;
+		this.sequence = sequence;
+		this.platforms = platforms;
+	}
+	
+	/** Returns the midi file this level was made from. */
+	public File getSource(){
+		return source;
+	}
+	
+	/** Returns the song's events as flat arrays. */
+	public MidiData getData(){
+		return data;
+	}
+	
+	/** Returns the Sequence to hand to the sequencer. */
+	public Sequence getSequence(){
+		return sequence;
+	}
+	
+	/** Returns the platforms built from the song. */
+	public ArrayList<Platform> getPlatforms(){
+		return platforms;
+	}
+}
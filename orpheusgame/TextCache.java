@@ -0,0 +1,137 @@
+package orpheusgame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Draws text in one font from images made ahead of time, since laying out text is one of the slowest things
+ *  Java2D does (especially when the font has to be substituted, as "Blackmoor LET" usually is). Each string
+ *  is drawn into an image the first time it's asked for, and blitted after that. Numbers, which change all
+ *  the time, are put together from a strip of pre-drawn digits instead, so a score costs a few small blits.
+ *  Coordinates are the same as for Graphics.drawString(): x is the left edge, y the baseline. */
+public class TextCache {
+
+	/** The most strings kept at once. */
+	public static final int max_cached = 256;
+
+	private Font font;
+	private FontMetrics fm;
+	/** Glyphs can stick out past their advance (italics, swashes...), so leave this much room either side. */
+	private int pad;
+
+	// The drawn strings, by color and text; least recently used first
+	private LinkedHashMap<String, BufferedImage> labels = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+			return size() > max_cached;
+		}
+	};
+
+	// The digits 0-9, side by side, by color
+	private HashMap<Integer, BufferedImage> digitStrips = new HashMap<Integer, BufferedImage>();
+	// Where each digit starts on the strip, and how far to move along after drawing it
+	private int[] digitX = new int[10];
+	private int[] digitAdvance = new int[10];
+
+	public TextCache(Font font){
+		this.font = font;
+		// Any graphics context will do for measuring
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = scratch.createGraphics();
+		fm = g2d.getFontMetrics(font);
+		g2d.dispose();
+		pad = Math.max(4, fm.getMaxAdvance() / 4);
+
+		int x = pad;
+		for (int d = 0; d < 10; d++){
+			digitX[d] = x;
+			digitAdvance[d] = fm.charWidth((char) ('0' + d));
+			x += digitAdvance[d] + 2*pad;
+		}
+	}
+
+	/** Draws a string, and returns its width (the distance to where the next string would start). */
+	public int drawString(Graphics g, String text, Color color, int x, int y){
+		String key = color.getRGB() + "|" + text;
+		BufferedImage img = labels.get(key);
+		if (img == null) {
+			img = newImage(fm.stringWidth(text) + 2*pad);
+			Graphics2D g2d = img.createGraphics();
+			g2d.setFont(font);
+			g2d.setColor(color);
+			g2d.drawString(text, pad, fm.getMaxAscent());
+			g2d.dispose();
+			labels.put(key, img);
+		}
+		g.drawImage(img, x - pad, y - fm.getMaxAscent(), null);
+		return img.getWidth() - 2*pad;
+	}
+
+	/** Draws a whole number from the digit strip, and returns its width. */
+	public int drawNumber(Graphics g, int n, Color color, int x, int y){
+		BufferedImage strip = digitStrip(color);
+		int start = x;
+		if (n < 0) {
+			x += drawString(g, "-", color, x, y);
+			n = -n;
+		}
+		// Digits from the most significant down
+		int div = 1;
+		while (div <= n / 10) {div *= 10;}
+		int top = y - fm.getMaxAscent();
+		int h = strip.getHeight();
+		for (; div > 0; div /= 10){
+			int d = (n / div) % 10;
+			int sx = digitX[d] - pad;
+			int w = digitAdvance[d] + 2*pad;
+			g.drawImage(strip, x - pad, top, x - pad + w, top + h, sx, 0, sx + w, h, null);
+			x += digitAdvance[d];
+		}
+		return x - start;
+	}
+
+	/** Returns how far above the baseline text can reach. */
+	public int getAscent(){
+		return fm.getMaxAscent();
+	}
+
+	/** Returns the height of a line of text. */
+	public int getHeight(){
+		return fm.getMaxAscent() + fm.getMaxDescent();
+	}
+
+	/** Returns how far text can stick out to either side of its width. */
+	public int getPadding(){
+		return pad;
+	}
+
+	/** Returns the strip of digits in the given color, drawing it first if need be. */
+	private BufferedImage digitStrip(Color color){
+		Integer key = Integer.valueOf(color.getRGB());
+		BufferedImage strip = digitStrips.get(key);
+		if (strip == null) {
+			strip = newImage(digitX[9] + digitAdvance[9] + pad);
+			Graphics2D g2d = strip.createGraphics();
+			g2d.setFont(font);
+			g2d.setColor(color);
+			for (int d = 0; d < 10; d++){
+				g2d.drawString(String.valueOf((char) ('0' + d)), digitX[d], fm.getMaxAscent());
+			}
+			g2d.dispose();
+			digitStrips.put(key, strip);
+		}
+		return strip;
+	}
+
+	/** Makes a blank, transparent image one line of text high. */
+	private BufferedImage newImage(int width){
+		return SpriteManager.createCompatibleImage(Math.max(1, width), getHeight(), Transparency.TRANSLUCENT);
+	}
+}
@@ -6,10 +6,22 @@ public class Timer implements Runnable {
 	private TimerOwner parent;
 	/** Frames per second, and the millisecond delay necessary to achieve this. */
 	private int fps, fps_delay;
+	/** How much later than planned (in ms) a cycle has to start before it counts as a late frame. Sleep and
+	 *  the clock are only good to a few ms, so anything less than this is just jitter. */
+	private int late_margin;
 	/** Will be false when the timer is running, and true otherwise.*/
 	private boolean bQuit;
 	/** This class's own timer object. */
 	private Thread timer;
+	/** If set, the time each cycle takes is recorded here. */
+	private volatile FrameProfiler profiler;
+	
+	/** The frame rate actually achieved, measured about once a second. */
+	private volatile float measuredFps;
+	/** How much later than planned (in ms) the last cycle started; 0 if it was on time. */
+	private volatile long lateness;
+	/** The number of cycles run so far, and how many of them started late. */
+	private volatile long frames, lateFrames;
 	
 	/** Constructs a timer with a default of 25 frames per second. */
 	public Timer(TimerOwner parent){
@@ -23,6 +35,8 @@ public class Timer implements Runnable {
 		// The minimum frames per second is 1.
 		this.fps = Math.max(fps, 1);
 		fps_delay = 1000 / fps;
+		// Half a frame, but at least a couple of clock ticks
+		late_margin = Math.max(fps_delay / 2, 2);
 	}
 	
 	
@@ -47,9 +61,42 @@ public class Timer implements Runnable {
 		bQuit = true;
 	}
 	
+	/** Records how long each cycle takes in the given profiler (as FrameProfiler.SECTION_FRAME). */
+	public void setProfiler(FrameProfiler profiler){
+		this.profiler = profiler;
+	}
+	
+	/** Returns the frame rate the timer is trying for. */
+	public int getTargetFps(){
+		return fps;
+	}
+	
+	/** Returns the frame rate actually achieved over the last second or so. */
+	public float getMeasuredFps(){
+		return measuredFps;
+	}
+	
+	/** Returns how much later than planned (in ms) the last cycle started. */
+	public long getLateness(){
+		return lateness;
+	}
+	
+	/** Returns the number of cycles run so far. */
+	public long getFrameCount(){
+		return frames;
+	}
+	
+	/** Returns the number of cycles that started noticeably later than planned (by over half a frame). */
+	public long getLateFrameCount(){
+		return lateFrames;
+	}
+	
 	/** Called internally by Thread's start() method. No need to call this yourself. */
 	public void run(){
 		long oldTime = System.currentTimeMillis();
+		// For measuring the frame rate: when this second's count started, and the count so far
+		long fpsStart = oldTime;
+		int fpsFrames = 0;
 		long sleepTime, renderTime; 
 		long delta = fps_delay; // Normally, each cycle will be a certain number of
 								// milliseconds long. However, if there is any jitter in
@@ -62,12 +109,41 @@ public class Timer implements Runnable {
 			will be 0 if we are running the very first cycle. */
 			
 			oldTime = System.currentTimeMillis();
+			long start = System.nanoTime();
+			FrameEvent event = new FrameEvent();
+			event.begin();
+			
+			// The first cycle has nothing to be late against
+			long late = (frames == 0) ? 0 : Math.max(0, delta - fps_delay);
+			lateness = late;
+			if (late > late_margin) {lateFrames++;}
+			frames++;
+			fpsFrames++;
+			if (oldTime - fpsStart >= 1000) {
+				measuredFps = fpsFrames * 1000.0f / (oldTime - fpsStart);
+				fpsStart = oldTime;
+				fpsFrames = 0;
+			}
 			
 			parent.cycle(delta); // Do a single frame, and tell the parent how much time
 								 // has elapsed.
 			
 			// Okay, we've just used up some time by letting the parent do it's thing, how much?
 			renderTime = System.currentTimeMillis() - oldTime;
+			FrameProfiler p = profiler;
+			if (p != null) {p.record(FrameProfiler.SECTION_FRAME, System.nanoTime() - start);}
+			event.end();
+			if (event.shouldCommit()) {
+				event.delta = delta;
+				event.lateness = late;
+				if (p != null) {
+					event.input = p.getLast(FrameProfiler.SECTION_INPUT);
+					event.simulation = p.getLast(FrameProfiler.SECTION_SIM);
+					event.audio = p.getLast(FrameProfiler.SECTION_AUDIO);
+					event.render = p.getLast(FrameProfiler.SECTION_PAINT);
+				}
+				event.commit();
+			}
 			sleepTime = fps_delay - (renderTime); // How much time we have left to sleep.
 			
 			// Now we have to wait until it's time to cycle again...we must sleep at
@@ -0,0 +1,150 @@
+package orpheusgame;
+
+import javax.sound.midi.MidiChannel;
+
+/** Keeps track of every note the game itself has turned on, across all 16 MIDI channels. The number of notes
+ *  sounding at once is capped: when the cap is reached, the oldest (or quietest) note is cut off to make room.
+ *  This keeps the synthesizer's load predictable when effects pile up on top of a busy song, and makes sure
+ *  every note that's turned on is eventually turned off.
+ *  Active voices live in parallel arrays, packed into the first 'active' entries. */
+public class VoiceManager {
+
+	/** When out of voices, cut off the note that started first. */
+	public static final int STEAL_OLDEST = 0;
+	/** When out of voices, cut off the note with the lowest velocity (the oldest one, if there's a tie). */
+	public static final int STEAL_QUIETEST = 1;
+
+	/** The synthesizer's channels. */
+	private MidiChannel[] channels;
+	/** How voices are chosen when one has to be stolen. */
+	private int stealMode;
+	/** The number of voices in use. */
+	private int active;
+
+	/** The channel, note number and velocity of each active voice. */
+	private int[] vChannel;
+	private int[] vNote;
+	private int[] vVelocity;
+	/** The order in which voices were started; larger is newer. */
+	private long[] vStarted;
+	/** The time (in ms) when each voice should be turned off, or 0 if it's held until noteOff() is called. */
+	private long[] vOff;
+	/** Incremented every time a voice starts. */
+	private long serial;
+
+	/** Manages notes on the given channels, allowing at most maxVoices at a time. */
+	public VoiceManager(MidiChannel[] channels, int maxVoices, int stealMode){
+		this.channels = channels;
+		this.stealMode = stealMode;
+		maxVoices = Math.max(maxVoices, 1);
+		vChannel = new int[maxVoices];
+		vNote = new int[maxVoices];
+		vVelocity = new int[maxVoices];
+		vStarted = new long[maxVoices];
+		vOff = new long[maxVoices];
+	}
+
+	/** Turns a note on, stealing a voice if they're all in use. 'toff' is the time (in ms) when the note should
+	 *  be turned off by update(), or 0 to leave it on until noteOff() is called. */
+	public void noteOn(int channel, int note, int velocity, long toff){
+		if (channel < 0 || channel >= channels.length) {return;}
+
+		// The same note on the same channel reuses its voice
+		int v = find(channel, note);
+		if (v < 0) {
+			if (active == vNote.length) {release(steal());}
+			v = active++;
+		}
+		vChannel[v] = channel;
+		vNote[v] = note;
+		vVelocity[v] = velocity;
+		vStarted[v] = serial++;
+		vOff[v] = toff;
+		channels[channel].noteOn(note, velocity);
+	}
+
+	/** Turns a note off. The NoteOff is sent even if the note wasn't started here, just to be safe. */
+	public void noteOff(int channel, int note, int velocity){
+		if (channel < 0 || channel >= channels.length) {return;}
+
+		int v = find(channel, note);
+		if (v >= 0) {remove(v);}
+		channels[channel].noteOff(note, velocity);
+	}
+
+	/** Turns off every note whose time is up. 'time' is the current time, in ms. */
+	public void update(long time){
+		// Walk backwards, since removing a voice moves the last one into its place
+		for (int v = active - 1; v >= 0; v--){
+			if (vOff[v] != 0 && vOff[v] <= time) {release(v);}
+		}
+	}
+
+	/** Turns off every note that's been started here. */
+	public void releaseAll(){
+		for (int v = active - 1; v >= 0; v--){
+			release(v);
+		}
+	}
+
+	/** Returns the number of notes currently sounding. */
+	public int getActiveCount(){
+		return active;
+	}
+
+	/** Returns the number of notes waiting for update() to turn them off (the rest are held until noteOff()). */
+	public int getPendingCount(){
+		int pending = 0;
+		for (int v = 0; v < active; v++){
+			if (vOff[v] != 0) {pending++;}
+		}
+		return pending;
+	}
+
+	/** Returns the most notes that can sound at once. */
+	public int getMaxVoices(){
+		return vNote.length;
+	}
+
+	/** Sets how voices are chosen when one has to be stolen (STEAL_OLDEST or STEAL_QUIETEST). */
+	public void setStealMode(int mode){
+		stealMode = mode;
+	}
+
+	/** Picks the voice to cut off when all of them are in use. */
+	private int steal(){
+		int victim = 0;
+		for (int v = 1; v < active; v++){
+			if (stealMode == STEAL_QUIETEST && vVelocity[v] != vVelocity[victim]) {
+				if (vVelocity[v] < vVelocity[victim]) {victim = v;}
+			} else if (vStarted[v] < vStarted[victim]) {
+				victim = v;
+			}
+		}
+		return victim;
+	}
+
+	/** Sends the NoteOff for a voice and frees it. */
+	private void release(int v){
+		channels[vChannel[v]].noteOff(vNote[v], 127);
+		remove(v);
+	}
+
+	/** Frees a voice by moving the last active voice into its slot. */
+	private void remove(int v){
+		active--;
+		vChannel[v] = vChannel[active];
+		vNote[v] = vNote[active];
+		vVelocity[v] = vVelocity[active];
+		vStarted[v] = vStarted[active];
+		vOff[v] = vOff[active];
+	}
+
+	/** Returns the voice playing the given note on the given channel, or -1 if there isn't one. */
+	private int find(int channel, int note){
+		for (int v = 0; v < active; v++){
+			if (vNote[v] == note && vChannel[v] == channel) {return v;}
+		}
+		return -1;
+	}
+}